@@ -0,0 +1,113 @@
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// kiosk searches and ticketing adds at the same time, for a few reader/writer mixes:
+// ConcurrentPassengerTrie vs the radix trie behind one lock (what we do today)
+// run with the project sources on the classpath, e.g.
+//   javac -d out ../src/*.java src/main/java/ConcurrentPassengerBench.java  (leave McMetroTest.java out)
+//   java -cp out ConcurrentPassengerBench 8 500000 2000
+public class ConcurrentPassengerBench {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int preload = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        System.out.printf("%d threads, %d names preloaded, %d ms per run%n", threads, preload, millis);
+        System.out.printf("%-8s %18s %18s%n", "reads %", "one lock ops/s", "concurrent ops/s");
+
+        for (int readPercent : new int[]{100, 95, 80, 50, 0}) {
+            double locked = run(new LockedIndex(new RadixPassengerTrie()), threads, preload, millis, readPercent);
+            double concurrent = run(new ConcurrentPassengerTrie(), threads, preload, millis, readPercent);
+            System.out.printf("%-8d %,18.0f %,18.0f%n", readPercent, locked, concurrent);
+        }
+    }
+
+    private static double run(PassengerIndex index, int threads, int preload, long millis, int readPercent)
+            throws InterruptedException {
+        Random random = new Random(251);
+        for (int i = 0; i < preload; i++) {
+            index.add(randomName(random));
+        }
+
+        LongAdder operations = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom local = ThreadLocalRandom.current();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                while (!stop.get()) {
+                    if (local.nextInt(100) < readPercent) {
+                        String prefix = randomName(local).substring(0, 3);
+                        index.collect(prefix, null, 20, new ArrayList<>());
+                    } else {
+                        index.add(randomName(local));
+                    }
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers[t].start();
+        }
+        go.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1000.0 / millis;
+    }
+
+    private static String randomName(Random random) {
+        char[] name = new char[4 + random.nextInt(9)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+
+    // every call behind one lock
+    private static class LockedIndex implements PassengerIndex {
+        private final PassengerIndex index;
+
+        LockedIndex(PassengerIndex index) {
+            this.index = index;
+        }
+
+        public synchronized void add(String name) {
+            index.add(name);
+        }
+
+        public synchronized boolean remove(String name) {
+            return index.remove(name);
+        }
+
+        public synchronized void collect(String prefix, List<String> results) {
+            index.collect(prefix, results);
+        }
+
+        public synchronized void collect(String prefix, String after, int limit, List<String> results) {
+            index.collect(prefix, after, limit, results);
+        }
+
+        public synchronized int size() {
+            return index.size();
+        }
+
+        public synchronized int nodeCount() {
+            return index.nodeCount();
+        }
+
+        public synchronized long estimatedBytes() {
+            return index.estimatedBytes();
+        }
+    }
+}
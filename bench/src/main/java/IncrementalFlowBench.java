@@ -0,0 +1,60 @@
+import java.util.*;
+
+// single track changes on a big grid network: incremental repair vs rebuilding McMetro and rerunning the flow
+// run with the project sources on the classpath, e.g.
+//   javac -d out ../src/*.java src/main/java/IncrementalFlowBench.java  (leave McMetroTest.java out)
+//   java -cp out IncrementalFlowBench 300 200
+public class IncrementalFlowBench {
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Random random = new Random(251);
+
+        // side x side grid, tracks go right and down
+        CityNetworkGenerator generator = new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, side * side, 251);
+        Building[] buildings = generator.buildings();
+        Track[] tracks = generator.tracks();
+        BuildingID start = new BuildingID(0);
+        BuildingID end = new BuildingID(buildings.length - 1);
+        System.out.printf("%d buildings, %d tracks, %d single track changes%n", buildings.length, tracks.length, changes);
+
+        // random capacity changes, the same sequence for both runs
+        int[] changedTrack = new int[changes];
+        int[] newCapacity = new int[changes];
+        for (int i = 0; i < changes; i++) {
+            changedTrack[i] = random.nextInt(tracks.length);
+            newCapacity[i] = random.nextInt(100);
+        }
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            // rebuild from scratch every time
+            Track[] current = tracks.clone();
+            long rebuildNanos = 0;
+            long checksum = 0;
+            for (int i = 0; i < changes; i++) {
+                Track t = current[changedTrack[i]];
+                current[changedTrack[i]] = new Track(t.id(), t.startBuildingId(), t.endBuildingId(), t.cost(), newCapacity[i]);
+                long begin = System.nanoTime();
+                checksum += new McMetro(current, buildings).maxPassengers(start, end);
+                rebuildNanos += System.nanoTime() - begin;
+            }
+
+            // incremental
+            McMetro metro = new McMetro(tracks, buildings);
+            metro.maxPassengers(start, end);
+            long incrementalNanos = 0;
+            long incrementalChecksum = 0;
+            for (int i = 0; i < changes; i++) {
+                long begin = System.nanoTime();
+                metro.updateCapacity(tracks[changedTrack[i]].id(), newCapacity[i]);
+                incrementalChecksum += metro.maxPassengers(start, end);
+                incrementalNanos += System.nanoTime() - begin;
+            }
+
+            System.out.printf("%s rebuild: %.3f ms/change, incremental: %.3f ms/change, speedup %.1fx (answers %s)%n",
+                    warmup == 0 ? "warmup" : "measured",
+                    rebuildNanos / 1e6 / changes, incrementalNanos / 1e6 / changes,
+                    (double) rebuildNanos / incrementalNanos, checksum == incrementalChecksum ? "match" : "DIFFER");
+        }
+    }
+}
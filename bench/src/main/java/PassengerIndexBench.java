@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// memory per name, load/search time and first page latency for the passenger tries, plus bulk loading and
+// fuzzy (edit distance) lookups and opening a saved (memory mapped) index, on random roster-like names
+// run with the project sources on the classpath, e.g.
+//   javac -d out ../src/*.java src/main/java/PassengerIndexBench.java  (leave McMetroTest.java out)
+//   java -Xmx8g -cp out PassengerIndexBench 2000000
+public class PassengerIndexBench {
+    private static final String[] FIRST = {"al", "ali", "ann", "ben", "bo", "car", "chr", "da", "dav", "el", "em",
+            "fr", "ga", "geo", "ha", "is", "ja", "jo", "ka", "ke", "la", "li", "ma", "mi", "na", "ol", "pa", "ro",
+            "sa", "sh", "so", "th", "to", "vi", "wi", "za"};
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(251);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(FIRST[random.nextInt(FIRST.length)]);
+            int extra = 2 + random.nextInt(10);
+            for (int j = 0; j < extra; j++) {
+                name.append((char) ('a' + random.nextInt(26)));
+            }
+            names[i] = name.toString();
+        }
+        System.out.printf("%d names%n", count);
+
+        run("hash trie", new HashPassengerTrie(), names);
+        run("radix trie", new RadixPassengerTrie(), names);
+
+        // nightly load: the roster arrives sorted, built bottom up in one pass
+        String[] sortedNames = names.clone();
+        Arrays.sort(sortedNames);
+        RadixPassengerTrie bulk = new RadixPassengerTrie();
+        long start = System.nanoTime();
+        int added = bulk.addSorted(Arrays.asList(sortedNames).iterator());
+        long nanos = System.nanoTime() - start;
+        System.out.printf("bulk radix  load %6d ms  %,.0f names/s  nodes %9d%n", nanos / 1_000_000,
+                new PassengerLoadStats(added, nanos).namesPerSecond(), bulk.nodeCount());
+
+        // typo tolerant lookups of names that are in the roster with one char changed
+        for (int maxEdits = 1; maxEdits <= 2; maxEdits++) {
+            int queries = 200;
+            long hits = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                char[] typo = names[random.nextInt(names.length)].toCharArray();
+                typo[random.nextInt(typo.length)] = 'q';
+                List<String> results = new ArrayList<>();
+                bulk.collectSimilar(new String(typo), maxEdits, false, results);
+                hits += results.size();
+            }
+            System.out.printf("fuzzy k=%d  %8.2f ms/query  %.1f hits/query%n", maxEdits,
+                    (System.nanoTime() - start) / 1e6 / queries, (double) hits / queries);
+        }
+
+        // restart: map the saved index instead of loading the roster again
+        Path file = Files.createTempFile("passengers", ".idx");
+        try {
+            MappedPassengerTrie.write(bulk, file);
+            start = System.nanoTime();
+            MappedPassengerTrie mapped = MappedPassengerTrie.open(file);
+            long openMicros = (System.nanoTime() - start) / 1000;
+            start = System.nanoTime();
+            for (char c = 'a'; c <= 'z'; c++) {
+                mapped.collect(String.valueOf(c), null, 20, new ArrayList<>());
+            }
+            System.out.printf("mapped      open %6d us  first pages %7d us  file %,d bytes%n", openMicros,
+                    (System.nanoTime() - start) / 1000, mapped.mappedBytes());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void run(String label, PassengerIndex index, String[] names) {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (String name : names) {
+            index.add(name);
+        }
+        long loadNanos = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+
+        start = System.nanoTime();
+        long found = 0;
+        for (String prefix : FIRST) {
+            List<String> results = new ArrayList<>();
+            index.collect(prefix + "e", results);
+            found += results.size();
+        }
+        long searchNanos = System.nanoTime() - start;
+
+        // first page of 20 for every single letter prefix, what a kiosk asks for
+        start = System.nanoTime();
+        for (char c = 'a'; c <= 'z'; c++) {
+            index.collect(String.valueOf(c), null, 20, new ArrayList<>());
+        }
+        long pageMicros = (System.nanoTime() - start) / 1000;
+
+        System.out.printf("%-10s  load %6d ms  search %5d ms (%d hits)  first pages %7d us  nodes %9d  estimated %6.1f B/name  measured %6.1f B/name%n",
+                label, loadNanos / 1_000_000, searchNanos / 1_000_000, found, pageMicros, index.nodeCount(),
+                index.bytesPerName(), (double) (heapAfter - heapBefore) / index.size());
+        if (index.size() == 0) {
+            System.out.println(); // keeps the index reachable until after the measurement
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.*;
+
+// hireTicketCheckers on millions of shifts: the int[][] version (boxed Comparator, sorts the caller's rows)
+// vs the int[] starts/ends overload (packed longs, primitive/parallel sort on a copy)
+// plus the other modes on the same shifts: assignTicketCheckers and the weighted DP (random weights)
+// run with the project sources on the classpath, e.g.
+//   javac -d out ../src/*.java src/main/java/TicketCheckerBench.java  (leave McMetroTest.java out)
+//   java -Xmx4g -cp out TicketCheckerBench 10000000 3
+public class TicketCheckerBench {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Random random = new Random(251);
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int[] weights = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = random.nextInt(Integer.MAX_VALUE / 2) - Integer.MAX_VALUE / 4;
+            ends[i] = starts[i] + 1 + random.nextInt(1000);
+            weights[i] = 1 + random.nextInt(100);
+        }
+        System.out.printf("%d shifts, %d rounds%n", count, rounds);
+
+        for (int round = 0; round < rounds; round++) {
+            // fresh rows every round, the old version sorts them in place
+            int[][] schedule = new int[count][];
+            for (int i = 0; i < count; i++) {
+                schedule[i] = new int[]{starts[i], ends[i]};
+            }
+            long start = System.nanoTime();
+            int rows = McMetro.hireTicketCheckers(schedule);
+            long rowsMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int packed = McMetro.hireTicketCheckers(starts, ends);
+            long packedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int partition = McMetro.assignTicketCheckers(starts, ends).checkers();
+            long partitionMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            long value = McMetro.hireWeightedTicketCheckers(starts, ends, weights);
+            long weightedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("round %d  int[][] %6d ms  int[] starts/ends %6d ms  (%d / %d checkers)%n",
+                    round, rowsMillis, packedMillis, rows, packed);
+            System.out.printf("         assign %6d ms (%d checkers)  weighted %6d ms (value %d)%n",
+                    partitionMillis, partition, weightedMillis, value);
+        }
+    }
+}
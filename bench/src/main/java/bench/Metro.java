@@ -0,0 +1,260 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+// JMH won't generate benchmarks for classes in the default package and McMetro lives there (and a named package
+// can't import from it), so the benchmarks reach McMetro through method handles. They're static finals, so
+// invokeExact gets inlined like a plain call. Anything of a project type is just Object over here
+final class Metro {
+    static final Class<?> MCMETRO = type("McMetro");
+    static final Class<?> TRACK = type("Track");
+    static final Class<?> BUILDING = type("Building");
+    private static final Class<?> BUILDING_ID = type("BuildingID");
+    private static final Class<?> GENERATOR = type("CityNetworkGenerator");
+    private static final Class<?> TOPOLOGY = type("CityNetworkGenerator$Topology");
+    private static final Class<?> METRICS = type("MetroMetrics");
+
+    private static final MethodHandle NEW_BUILDING_ID = constructor(BUILDING_ID, int.class);
+    private static final MethodHandle NEW_METRO = constructor(MCMETRO, TRACK.arrayType(), BUILDING.arrayType());
+    private static final MethodHandle NEW_GENERATOR = constructor(GENERATOR, TOPOLOGY, int.class, long.class);
+    private static final MethodHandle GENERATED_TRACKS = method(GENERATOR, "tracks");
+    private static final MethodHandle GENERATED_BUILDINGS = method(GENERATOR, "buildings");
+
+    private static final MethodHandle NEW_METRICS = constructor(METRICS);
+    private static final MethodHandle SET_METRICS = method(MCMETRO, "setMetrics", METRICS);
+    private static final MethodHandle MAX_PASSENGERS = method(MCMETRO, "maxPassengers", BUILDING_ID, BUILDING_ID);
+    private static final MethodHandle BEST_METRO_SYSTEM = method(MCMETRO, "bestMetroSystem");
+    private static final MethodHandle BEST_METRO_SYSTEM_ON = method(MCMETRO, "bestMetroSystem", ForkJoinPool.class);
+    private static final MethodHandle LOAD_PASSENGERS = method(MCMETRO, "loadPassengers", Stream.class);
+    private static final MethodHandle SEARCH = method(MCMETRO, "searchForPassengers", String.class);
+    private static final MethodHandle SEARCH_PAGE = method(MCMETRO, "searchForPassengers", String.class, int.class, String.class);
+    private static final MethodHandle SEARCH_FUZZY = method(MCMETRO, "searchForPassengersFuzzy", String.class, int.class, boolean.class);
+    private static final MethodHandle HIRE_ROWS = method(MCMETRO, "hireTicketCheckers", int[][].class);
+    private static final MethodHandle HIRE_COLUMNS = method(MCMETRO, "hireTicketCheckers", int[].class, int[].class);
+    private static final MethodHandle ASSIGN = method(MCMETRO, "assignTicketCheckers", int[].class, int[].class);
+    private static final MethodHandle HIRE_WEIGHTED = method(MCMETRO, "hireWeightedTicketCheckers", int[].class, int[].class, int[].class);
+
+    private Metro() {
+    }
+
+    static Object buildingId(int id) {
+        try {
+            return NEW_BUILDING_ID.invokeExact(id);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // tracks is a Track[], buildings a Building[] (see Array.newInstance with TRACK / BUILDING)
+    static Object metro(Object tracks, Object buildings) {
+        try {
+            return NEW_METRO.invokeExact(tracks, buildings);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // a CityNetworkGenerator, topology is one of its Topology names
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object generator(String topology, int buildings, long seed) {
+        Object value = Enum.valueOf((Class) TOPOLOGY, topology);
+        try {
+            return NEW_GENERATOR.invokeExact(value, buildings, seed);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Track[]
+    static Object tracks(Object generator) {
+        try {
+            return GENERATED_TRACKS.invokeExact(generator);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Building[]
+    static Object buildings(Object generator) {
+        try {
+            return GENERATED_BUILDINGS.invokeExact(generator);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // turns on a fresh MetroMetrics for this McMetro and returns it
+    static Object enableMetrics(Object metro) {
+        try {
+            Object metrics = NEW_METRICS.invokeExact();
+            SET_METRICS.invokeExact(metro, metrics);
+            return metrics;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object[] newArray(Class<?> type, int length) {
+        return (Object[]) Array.newInstance(type, length);
+    }
+
+    static int maxPassengers(Object metro, Object start, Object end) {
+        try {
+            return (int) MAX_PASSENGERS.invokeExact(metro, start, end);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object bestMetroSystem(Object metro) {
+        try {
+            return BEST_METRO_SYSTEM.invokeExact(metro);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object bestMetroSystem(Object metro, ForkJoinPool pool) {
+        try {
+            return BEST_METRO_SYSTEM_ON.invokeExact(metro, pool);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object loadPassengers(Object metro, Stream<String> sortedNames) {
+        try {
+            return LOAD_PASSENGERS.invokeExact(metro, sortedNames);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static ArrayList<String> searchForPassengers(Object metro, String firstLetters) {
+        try {
+            return (ArrayList<String>) SEARCH.invokeExact(metro, firstLetters);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // a PassengerPage
+    static Object searchForPassengers(Object metro, String firstLetters, int limit, String cursor) {
+        try {
+            return SEARCH_PAGE.invokeExact(metro, firstLetters, limit, cursor);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static ArrayList<String> searchForPassengersFuzzy(Object metro, String name, int maxEdits, boolean asPrefix) {
+        try {
+            return (ArrayList<String>) SEARCH_FUZZY.invokeExact(metro, name, maxEdits, asPrefix);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int hireTicketCheckers(int[][] schedule) {
+        try {
+            return (int) HIRE_ROWS.invokeExact(schedule);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int hireTicketCheckers(int[] starts, int[] ends) {
+        try {
+            return (int) HIRE_COLUMNS.invokeExact(starts, ends);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // a CheckerAssignment
+    static Object assignTicketCheckers(int[] starts, int[] ends) {
+        try {
+            return ASSIGN.invokeExact(starts, ends);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static long hireWeightedTicketCheckers(int[] starts, int[] ends, int[] weights) {
+        try {
+            return (long) HIRE_WEIGHTED.invokeExact(starts, ends, weights);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("project class " + name + " isn't on the classpath", e);
+        }
+    }
+
+    // project types in the handle's signature become Object, primitives and JDK types stay
+    private static MethodType erased(MethodType type) {
+        MethodType erased = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (!isJdkType(type.parameterType(i))) {
+                erased = erased.changeParameterType(i, Object.class);
+            }
+        }
+        return isJdkType(type.returnType()) ? erased : erased.changeReturnType(Object.class);
+    }
+
+    private static boolean isJdkType(Class<?> type) {
+        Class<?> element = type;
+        while (element.isArray()) {
+            element = element.getComponentType();
+        }
+        return element.isPrimitive() || element.getName().startsWith("java.");
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameters);
+            constructor.setAccessible(true); // package private in the default package
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            return handle.asType(erased(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no " + type.getName() + " constructor for these parameters", e);
+        }
+    }
+
+    // static methods keep their signature, instance ones take the receiver as an Object first
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters) {
+        try {
+            Method method = owner.getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return handle.asType(erased(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no " + owner.getName() + "." + name + " for these parameters", e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// building McMetro, maxPassengers and bestMetroSystem on CityNetworkGenerator networks, about 1 to 2 tracks
+// per building. 10M buildings isn't in the default run (a few GB of Track records), add it with
+// -p buildings=10000000
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class NetworkBenchmark {
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "100000", "1000000"})
+    int buildings;
+
+    @Param({"GRID", "HUB_AND_SPOKE", "SCALE_FREE", "LONG_CHAIN"})
+    String topology;
+
+    // -p metrics=true to see what MetroMetrics costs
+    @Param({"false"})
+    boolean metrics;
+
+    private Synthetic.Network network;
+    private Object metro;
+    private final Object[] sources = new Object[QUERIES];
+    private final Object[] sinks = new Object[QUERIES];
+    private int query;
+
+    @Setup
+    public void setup() {
+        network = Synthetic.network(topology, buildings, 251);
+        metro = Metro.metro(network.tracks, network.buildings);
+        if (metrics) {
+            Metro.enableMetrics(metro);
+        }
+        // McMetro answers a repeated question from its residual buffer, so no two queries in a row are the same
+        SplittableRandom random = new SplittableRandom(25);
+        for (int q = 0; q < QUERIES; q++) {
+            do {
+                sources[q] = network.ids[random.nextInt(network.ids.length)];
+                sinks[q] = network.ids[random.nextInt(network.ids.length)];
+            } while (sources[q] == sinks[q] || q > 0 && sources[q] == sources[q - 1] && sinks[q] == sinks[q - 1]);
+        }
+        Metro.bestMetroSystem(metro); // score index is built once and cached, measure the Kruskal pass
+    }
+
+    @Benchmark
+    public Object build() {
+        return Metro.metro(network.tracks, network.buildings);
+    }
+
+    @Benchmark
+    public int maxPassengers() {
+        int q = query++ & (QUERIES - 1);
+        return Metro.maxPassengers(metro, sources[q], sinks[q]);
+    }
+
+    @Benchmark
+    public Object bestMetroSystem() {
+        return Metro.bestMetroSystem(metro);
+    }
+
+    @Benchmark
+    public Object bestMetroSystemParallel() {
+        return Metro.bestMetroSystem(metro, ForkJoinPool.commonPool());
+    }
+}
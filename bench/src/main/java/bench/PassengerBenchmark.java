@@ -0,0 +1,89 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// passenger roster loads and the three searches on synthetic rosters. Prefixes are 3 letters of a real name,
+// fuzzy queries are real names with one letter changed
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PassengerBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int names;
+
+    // -p metrics=true to see what MetroMetrics costs
+    @Param({"false"})
+    boolean metrics;
+
+    private String[] roster;
+    private Object metro;
+    private final String[] prefixes = new String[QUERIES];
+    private final String[] typos = new String[QUERIES];
+    private int query;
+
+    @Setup
+    public void setup() {
+        roster = Synthetic.roster(names, 251);
+        metro = emptyMetro();
+        if (metrics) {
+            Metro.enableMetrics(metro);
+        }
+        Metro.loadPassengers(metro, Arrays.stream(roster));
+        SplittableRandom random = new SplittableRandom(25);
+        for (int q = 0; q < QUERIES; q++) {
+            String name = roster[random.nextInt(roster.length)];
+            prefixes[q] = name.substring(0, 3);
+            char[] typo = name.toCharArray();
+            typo[random.nextInt(typo.length)] = (char) ('a' + random.nextInt(26));
+            typos[q] = new String(typo);
+        }
+    }
+
+    private static Object emptyMetro() {
+        return Metro.metro(Metro.newArray(Metro.TRACK, 0), Metro.newArray(Metro.BUILDING, 0));
+    }
+
+    // bottom up bulk load into a fresh McMetro
+    @Benchmark
+    public Object load() {
+        Object fresh = emptyMetro();
+        Metro.loadPassengers(fresh, Arrays.stream(roster));
+        return fresh;
+    }
+
+    // every match, capitalized and sorted
+    @Benchmark
+    public Object search() {
+        return Metro.searchForPassengers(metro, prefixes[query++ & (QUERIES - 1)]);
+    }
+
+    // first page of 20
+    @Benchmark
+    public Object searchPage() {
+        return Metro.searchForPassengers(metro, prefixes[query++ & (QUERIES - 1)], 20, null);
+    }
+
+    @Benchmark
+    public Object searchFuzzy() {
+        return Metro.searchForPassengersFuzzy(metro, typos[query++ & (QUERIES - 1)], 1, false);
+    }
+}
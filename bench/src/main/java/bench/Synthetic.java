@@ -0,0 +1,89 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// seeded synthetic inputs for the JMH benchmarks, the same seed always gives the same data
+final class Synthetic {
+    private static final String[] SYLLABLES = {
+            "an", "ber", "ca", "di", "el", "fa", "go", "ha", "is", "jo", "ka", "li", "ma", "no", "or",
+            "pe", "qu", "ra", "si", "ta", "ul", "vi", "wa", "xe", "ya", "zo", "ch", "st", "tr", "mi"
+    };
+
+    private Synthetic() {
+    }
+
+    // a CityNetworkGenerator network with the BuildingID of every building for picking queries
+    static final class Network {
+        final Object tracks;      // Track[]
+        final Object buildings;   // Building[]
+        final Object[] ids;       // BuildingID per building
+
+        private Network(Object tracks, Object buildings, Object[] ids) {
+            this.tracks = tracks;
+            this.buildings = buildings;
+            this.ids = ids;
+        }
+    }
+
+    static Network network(String topology, int buildingCount, long seed) {
+        Object generator = Metro.generator(topology, buildingCount, seed);
+        Object[] ids = new Object[buildingCount];
+        for (int i = 0; i < buildingCount; i++) {
+            ids[i] = Metro.buildingId(i);
+        }
+        return new Network(Metro.tracks(generator), Metro.buildings(generator), ids);
+    }
+
+    // count lower case names of 2 to 5 syllables, sorted (duplicates are left in, the loader skips them)
+    static String[] roster(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] names = new String[count];
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            name.setLength(0);
+            int syllables = 2 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            names[i] = name.toString();
+        }
+        Arrays.parallelSort(names);
+        return names;
+    }
+
+    // ticket checker shifts as columns: starts spread over the int range, 1 to 1000 long, weights 1 to 100
+    static final class Schedule {
+        final int[] starts;
+        final int[] ends;
+        final int[] weights;
+
+        private Schedule(int[] starts, int[] ends, int[] weights) {
+            this.starts = starts;
+            this.ends = ends;
+            this.weights = weights;
+        }
+
+        // the same shifts as {start, end} rows
+        int[][] rows() {
+            int[][] rows = new int[starts.length][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new int[]{starts[i], ends[i]};
+            }
+            return rows;
+        }
+    }
+
+    static Schedule schedule(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int[] weights = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = random.nextInt(Integer.MAX_VALUE / 2) - Integer.MAX_VALUE / 4;
+            ends[i] = starts[i] + 1 + random.nextInt(1000);
+            weights[i] = 1 + random.nextInt(100);
+        }
+        return new Schedule(starts, ends, weights);
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// every ticket checker mode on the same random shifts
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TicketCheckerBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int shifts;
+
+    private Synthetic.Schedule schedule;
+    private int[][] rows;
+
+    @Setup
+    public void setup() {
+        schedule = Synthetic.schedule(shifts, 251);
+        rows = schedule.rows();
+    }
+
+    // the int[][] version sorts the rows it's given, so it gets a fresh (shallow) copy each time
+    @Benchmark
+    public int hireRows() {
+        return Metro.hireTicketCheckers(rows.clone());
+    }
+
+    @Benchmark
+    public int hireColumns() {
+        return Metro.hireTicketCheckers(schedule.starts, schedule.ends);
+    }
+
+    @Benchmark
+    public Object assign() {
+        return Metro.assignTicketCheckers(schedule.starts, schedule.ends);
+    }
+
+    @Benchmark
+    public long hireWeighted() {
+        return Metro.hireWeightedTicketCheckers(schedule.starts, schedule.ends, schedule.weights);
+    }
+}
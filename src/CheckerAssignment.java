@@ -0,0 +1,9 @@
+import java.util.Arrays;
+
+// result of McMetro.assignTicketCheckers: checkerOf[shift] is the checker working that shift, and checker c's
+// shifts (in start order) are shifts[offsets[c]] .. shifts[offsets[c + 1] - 1], same layout as FlowNetwork's CSR
+public record CheckerAssignment(int checkers, int[] checkerOf, int[] offsets, int[] shifts) {
+    int[] shiftsOf(int checker) {
+        return Arrays.copyOfRange(shifts, offsets[checker], offsets[checker + 1]);
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// seeded synthetic metro networks for load and scaling tests, same topology + size + seed = same network
+// buildings are 0..n-1 and tracks are numbered in the order they're made. Everything is generated on the fly from
+// the seed, so writeCsv streams millions of tracks to disk without ever holding the records
+//   GRID           square grid, tracks go right and down (every building reaches the bottom right corner)
+//   HUB_AND_SPOKE  about sqrt(n) busy hubs in a two way ring with big tracks, every other building hangs off a
+//                  random hub both ways
+//   SCALE_FREE     preferential attachment (Barabasi-Albert), every new building links to 2 existing ones picked
+//                  by degree so a few end up with huge degrees, random direction per track
+//   LONG_CHAIN     0 -> 1 -> ... -> n-1, all tracks equal so they're taken in id order: the longest possible
+//                  path for the flow engines (n BFS levels, one augmenting path n-1 tracks long) and anything
+//                  that walks parent pointers along it. Not deep for the disjoint sets: union by rank keeps every
+//                  tree under log2 n deep whatever the order, unioned in id order every tree has depth 1
+//https://en.wikipedia.org/wiki/Barab%C3%A1si%E2%80%93Albert_model
+// also runnable: java CityNetworkGenerator <topology> <buildings> <seed> <buildings.csv> <tracks.csv>
+class CityNetworkGenerator {
+    enum Topology { GRID, HUB_AND_SPOKE, SCALE_FREE, LONG_CHAIN }
+
+    private static final int LINKS_PER_BUILDING = 2; // SCALE_FREE
+
+    interface BuildingSink {
+        void building(int id, int occupants) throws IOException;
+    }
+
+    interface TrackSink {
+        void track(int id, int start, int end, int cost, int capacity) throws IOException;
+    }
+
+    private final Topology topology;
+    private final int buildingCount;
+    private final long seed;
+
+    CityNetworkGenerator(Topology topology, int buildingCount, long seed) {
+        if (buildingCount < 0) {
+            throw new IllegalArgumentException("building count can't be negative, got " + buildingCount);
+        }
+        this.topology = topology;
+        this.buildingCount = buildingCount;
+        this.seed = seed;
+    }
+
+    int buildingCount() {
+        return buildingCount;
+    }
+
+    // exact number of tracks forEachTrack makes
+    int trackCount() {
+        int n = buildingCount;
+        switch (topology) {
+            case GRID: {
+                int side = side();
+                int right = n / side * (side - 1) + Math.max(0, n % side - 1);
+                return right + Math.max(0, n - side);
+            }
+            case HUB_AND_SPOKE: {
+                int hubs = hubs();
+                return (hubs > 1 ? 2 * hubs : 0) + 2 * (n - hubs);
+            }
+            case SCALE_FREE:
+                return n < 2 ? 0 : 1 + LINKS_PER_BUILDING * (n - 2);
+            default:
+                return Math.max(0, n - 1);
+        }
+    }
+
+    Building[] buildings() {
+        Building[] buildings = new Building[buildingCount];
+        try {
+            forEachBuilding((id, occupants) -> buildings[id] = new Building(new BuildingID(id), occupants));
+        } catch (IOException e) {
+            throw new AssertionError(e); // the sink above doesn't throw
+        }
+        return buildings;
+    }
+
+    // building ids are shared between tracks, one BuildingID per building
+    Track[] tracks() {
+        BuildingID[] ids = new BuildingID[buildingCount];
+        for (int i = 0; i < buildingCount; i++) {
+            ids[i] = new BuildingID(i);
+        }
+        Track[] tracks = new Track[trackCount()];
+        try {
+            forEachTrack((id, start, end, cost, capacity) ->
+                    tracks[id] = new Track(new TrackID(id), ids[start], ids[end], cost, capacity));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return tracks;
+    }
+
+    // the same network as plain columns without any records, for McMetro(NetworkColumns) and
+    // NetworkLoader.writeBinary
+    NetworkColumns columns() {
+        int[] buildingIds = new int[buildingCount];
+        int[] occupants = new int[buildingCount];
+        int tracks = trackCount();
+        int[] trackIds = new int[tracks];
+        int[] starts = new int[tracks];
+        int[] ends = new int[tracks];
+        int[] costs = new int[tracks];
+        int[] capacities = new int[tracks];
+        try {
+            forEachBuilding((id, people) -> {
+                buildingIds[id] = id;
+                occupants[id] = people;
+            });
+            forEachTrack((id, start, end, cost, capacity) -> {
+                trackIds[id] = id;
+                starts[id] = start;
+                ends[id] = end;
+                costs[id] = cost;
+                capacities[id] = capacity;
+            });
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return new NetworkColumns(buildingIds, occupants, trackIds, starts, ends, costs, capacities);
+    }
+
+    // buildings file "id,occupants", tracks file "id,start,end,cost,capacity", both with that header line
+    void writeCsv(Path buildingsFile, Path tracksFile) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(buildingsFile)) {
+            out.write("id,occupants\n");
+            forEachBuilding((id, occupants) -> {
+                out.write(Integer.toString(id));
+                out.write(',');
+                out.write(Integer.toString(occupants));
+                out.write('\n');
+            });
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(tracksFile)) {
+            out.write("id,start,end,cost,capacity\n");
+            forEachTrack((id, start, end, cost, capacity) -> {
+                out.write(Integer.toString(id));
+                out.write(',');
+                out.write(Integer.toString(start));
+                out.write(',');
+                out.write(Integer.toString(end));
+                out.write(',');
+                out.write(Integer.toString(cost));
+                out.write(',');
+                out.write(Integer.toString(capacity));
+                out.write('\n');
+            });
+        }
+    }
+
+    void forEachBuilding(BuildingSink sink) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int hubs = topology == Topology.HUB_AND_SPOKE ? hubs() : 0;
+        for (int id = 0; id < buildingCount; id++) {
+            int occupants = 500 + random.nextInt(1000);
+            sink.building(id, id < hubs ? occupants * 10 : occupants);
+        }
+    }
+
+    void forEachTrack(TrackSink sink) throws IOException {
+        // own stream so the tracks don't depend on how many draws the buildings took
+        SplittableRandom random = new SplittableRandom(seed).split();
+        int n = buildingCount;
+        int id = 0;
+        switch (topology) {
+            case GRID: {
+                int side = side();
+                for (int u = 0; u < n; u++) {
+                    if (u % side + 1 < side && u + 1 < n) {
+                        sink.track(id++, u, u + 1, cost(random), capacity(random));
+                    }
+                    if (u + side < n) {
+                        sink.track(id++, u, u + side, cost(random), capacity(random));
+                    }
+                }
+                break;
+            }
+            case HUB_AND_SPOKE: {
+                int hubs = hubs();
+                if (hubs > 1) {
+                    for (int h = 0; h < hubs; h++) {
+                        int next = (h + 1) % hubs;
+                        int capacity = 1000 + random.nextInt(4000);
+                        sink.track(id++, h, next, cost(random), capacity);
+                        sink.track(id++, next, h, cost(random), capacity);
+                    }
+                }
+                for (int spoke = hubs; spoke < n; spoke++) {
+                    int hub = random.nextInt(hubs);
+                    sink.track(id++, spoke, hub, cost(random), capacity(random));
+                    sink.track(id++, hub, spoke, cost(random), capacity(random));
+                }
+                break;
+            }
+            case SCALE_FREE: {
+                if (n < 2) {
+                    break;
+                }
+                // every track's two ends, picking a uniform slot picks a building by its degree
+                int[] ends = new int[2 * trackCount()];
+                int filled = 0;
+                sink.track(id++, 0, 1, cost(random), capacity(random));
+                ends[filled++] = 0;
+                ends[filled++] = 1;
+                for (int u = 2; u < n; u++) {
+                    int first = ends[random.nextInt(filled)];
+                    int second = first;
+                    while (second == first) { // two different buildings exist from u = 2 on
+                        second = ends[random.nextInt(filled)];
+                    }
+                    linkEitherWay(sink, id++, u, first, random);
+                    linkEitherWay(sink, id++, u, second, random);
+                    ends[filled++] = u;
+                    ends[filled++] = first;
+                    ends[filled++] = u;
+                    ends[filled++] = second;
+                }
+                break;
+            }
+            default:
+                for (int u = 0; u + 1 < n; u++) {
+                    sink.track(id++, u, u + 1, 1, 100);
+                }
+        }
+    }
+
+    private static void linkEitherWay(TrackSink sink, int id, int u, int v, SplittableRandom random) throws IOException {
+        if (random.nextBoolean()) {
+            sink.track(id, u, v, cost(random), capacity(random));
+        } else {
+            sink.track(id, v, u, cost(random), capacity(random));
+        }
+    }
+
+    private int side() {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(buildingCount)));
+    }
+
+    private int hubs() {
+        return Math.min(buildingCount, Math.max(1, (int) Math.sqrt(buildingCount)));
+    }
+
+    private static int cost(SplittableRandom random) {
+        return 1 + random.nextInt(20);
+    }
+
+    private static int capacity(SplittableRandom random) {
+        return 1 + random.nextInt(100);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("usage: java CityNetworkGenerator <grid|hub_and_spoke|scale_free|long_chain> <buildings> <seed> <buildings.csv> <tracks.csv>");
+            System.exit(2);
+        }
+        CityNetworkGenerator generator = new CityNetworkGenerator(Topology.valueOf(args[0].toUpperCase()),
+                Integer.parseInt(args[1]), Long.parseLong(args[2]));
+        long start = System.nanoTime();
+        generator.writeCsv(Path.of(args[3]), Path.of(args[4]));
+        System.out.printf("%d buildings, %d tracks in %d ms%n", generator.buildingCount(), generator.trackCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
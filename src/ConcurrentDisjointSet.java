@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// lock free union-find over dense ints 0..n-1, safe to use from many threads at once
+// parents live in an AtomicIntegerArray and every change is a CAS, so no thread ever blocks another:
+//  - find does path halving with CAS (if someone else changed the pointer first we just keep walking)
+//  - union links the root with the lower random priority under the other one, a failed CAS means another
+//    thread just linked one of the roots so we look them up again and retry
+// randomized linking keeps the trees shallow without having to keep sizes/ranks consistent across threads
+//https://arxiv.org/abs/1911.06347 (Jayanti and Tarjan, concurrent disjoint set union)
+public class ConcurrentDisjointSet {
+    private final AtomicIntegerArray parent;
+    private final int[] priority; // fixed random priority per element, only read after construction
+
+    ConcurrentDisjointSet(int n) {
+        parent = new AtomicIntegerArray(n);
+        priority = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+            priority[i] = mix(i);
+        }
+    }
+
+    // cheap integer hash (murmur3 finalizer) so priorities look random but stay deterministic
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    int find(int a) {
+        while (true) {
+            int p = parent.get(a);
+            if (p == a) {
+                return a;
+            }
+            int grandparent = parent.get(p);
+            if (p != grandparent) {
+                parent.compareAndSet(a, p, grandparent); // path halving, fine if it fails
+            }
+            a = grandparent;
+        }
+    }
+
+    // merges the sets of a and b, false if they were already together
+    boolean union(int a, int b) {
+        while (true) {
+            int aRoot = find(a);
+            int bRoot = find(b);
+            if (aRoot == bRoot) {
+                return false;
+            }
+            // lower priority root goes under the higher one, index breaks ties
+            if (priority[aRoot] > priority[bRoot] || (priority[aRoot] == priority[bRoot] && aRoot > bRoot)) {
+                int swap = aRoot;
+                aRoot = bRoot;
+                bRoot = swap;
+            }
+            if (parent.compareAndSet(aRoot, aRoot, bRoot)) {
+                return true;
+            }
+        }
+    }
+
+    // a and b are in the same set. Roots can change while we look, so only trust a "no" if a's root
+    // is still a root afterwards
+    boolean connected(int a, int b) {
+        while (true) {
+            int aRoot = find(a);
+            int bRoot = find(b);
+            if (aRoot == bRoot) {
+                return true;
+            }
+            if (parent.get(aRoot) == aRoot) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return parent.length();
+    }
+}
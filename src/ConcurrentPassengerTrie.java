@@ -0,0 +1,273 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+// passenger trie that any number of threads can search and add to at once
+// radix nodes with copy on write child arrays: a writer builds the new sorted array and CASes it in, so
+// searches never take a lock and only ever see whole arrays, and writers on different branches touch
+// different arrays. A node's children and terminal flag live in a Branch that a label split moves under
+// the new middle node as is, so a writer still holding the old node keeps writing into the live branch.
+// searches are weakly consistent (like ConcurrentHashMap): names added during a search may or may not show up.
+// removing only clears the terminal flag, empty branches are left in place
+//https://en.wikipedia.org/wiki/Radix_tree
+class ConcurrentPassengerTrie implements PassengerIndex {
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        final String label; // never empty except at the root
+        final Branch branch;
+
+        Node(String label, Branch branch) {
+            this.label = label;
+            this.branch = branch;
+        }
+    }
+
+    private static final class Branch {
+        volatile Node[] children = NO_CHILDREN; // sorted by first char
+        volatile int terminal; // 1 if a name ends here, CASed so only one writer counts it
+
+        Branch(int terminal) {
+            this.terminal = terminal;
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<Branch, Node[]> CHILDREN =
+            AtomicReferenceFieldUpdater.newUpdater(Branch.class, Node[].class, "children");
+    private static final AtomicIntegerFieldUpdater<Branch> TERMINAL =
+            AtomicIntegerFieldUpdater.newUpdater(Branch.class, "terminal");
+
+    private final Branch root = new Branch(0);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger nodeCount = new AtomicInteger(1);
+
+    @Override
+    public void add(String name) {
+        Branch branch = root;
+        int i = 0;
+        while (i < name.length()) {
+            Node[] children = branch.children;
+            int position = find(children, name.charAt(i));
+            if (position < 0) {
+                // nothing shares this char, the rest of the name becomes one leaf
+                Node leaf = new Node(name.substring(i), new Branch(1));
+                if (CHILDREN.compareAndSet(branch, children, inserted(children, -position - 1, leaf))) {
+                    nodeCount.incrementAndGet();
+                    size.incrementAndGet();
+                    return;
+                }
+                continue; // somebody else changed this branch, look again
+            }
+
+            Node child = children[position];
+            int matched = matched(child.label, name, i);
+            if (matched == child.label.length()) {
+                branch = child.branch;
+                i += matched;
+                continue;
+            }
+            // name leaves the label part way: split it, the old branch goes under the new middle node untouched
+            Branch middle = new Branch(0);
+            middle.children = new Node[]{new Node(child.label.substring(matched), child.branch)};
+            Node[] replaced = children.clone();
+            replaced[position] = new Node(child.label.substring(0, matched), middle);
+            if (CHILDREN.compareAndSet(branch, children, replaced)) {
+                nodeCount.incrementAndGet();
+            }
+            // either way go round again, now there's a node ending at the split
+        }
+        if (TERMINAL.compareAndSet(branch, 0, 1)) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean remove(String name) {
+        Branch branch = branch(name);
+        if (branch != null && TERMINAL.compareAndSet(branch, 1, 0)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void collect(String prefix, List<String> results) {
+        collect(prefix, null, Integer.MAX_VALUE, results);
+    }
+
+    // same walk as RadixTrieReader: children in order, skipping subtrees before `after`, stopping at limit
+    @Override
+    public void collect(String prefix, String after, int limit, List<String> results) {
+        Branch branch = root;
+        StringBuilder name = new StringBuilder(prefix);
+        int i = 0;
+        while (i < prefix.length()) {
+            Node[] children = branch.children;
+            int position = find(children, prefix.charAt(i));
+            if (position < 0) {
+                return;
+            }
+            Node child = children[position];
+            int matched = matched(child.label, prefix, i);
+            if (matched < child.label.length() && i + matched < prefix.length()) {
+                return; // prefix goes off the label
+            }
+            // prefix may stop inside the label, the rest of it is part of every match
+            name.append(child.label, matched, child.label.length());
+            i += matched;
+            branch = child.branch;
+        }
+        int order = after == null ? 1 : RadixTrieReader.comparePrefix(name, after);
+        if (order >= 0) {
+            page(branch, name, order > 0 ? null : after, limit, results);
+        }
+    }
+
+    private void page(Branch branch, StringBuilder name, String after, int limit, List<String> results) {
+        if (branch.terminal == 1 && after == null && results.size() < limit) {
+            results.add(name.toString());
+        }
+        int length = name.length();
+        for (Node child : branch.children) { // one snapshot of the array
+            if (results.size() >= limit) {
+                return;
+            }
+            name.append(child.label);
+            int order = after == null ? 1 : RadixTrieReader.comparePrefix(name, after);
+            if (order >= 0) {
+                page(child.branch, name, order > 0 ? null : after, limit, results);
+            }
+            name.setLength(length);
+        }
+    }
+
+    // same bounded DFS as RadixTrieReader.collectSimilar
+    @Override
+    public void collectSimilar(String query, int maxEdits, boolean asPrefix, List<String> results) {
+        if (maxEdits < 0) {
+            return;
+        }
+        int[][] rows = new int[query.length() + maxEdits + 2][];
+        rows[0] = EditDistance.firstRow(query);
+        if (asPrefix && rows[0][query.length()] <= maxEdits) {
+            page(root, new StringBuilder(), null, Integer.MAX_VALUE, results);
+            return;
+        }
+        similar(root, new StringBuilder(), rows, query, maxEdits, asPrefix, results);
+    }
+
+    private void similar(Branch branch, StringBuilder name, int[][] rows, String query, int maxEdits,
+                         boolean asPrefix, List<String> results) {
+        if (!asPrefix && branch.terminal == 1 && rows[name.length()][query.length()] <= maxEdits) {
+            results.add(name.toString());
+        }
+        int length = name.length();
+        for (Node child : branch.children) {
+            boolean descend = true;
+            for (int i = 0; i < child.label.length() && descend; i++) {
+                int depth = name.length();
+                if (rows[depth + 1] == null) {
+                    rows[depth + 1] = new int[query.length() + 1];
+                }
+                int smallest = EditDistance.nextRow(rows[depth], rows[depth + 1], query, child.label.charAt(i));
+                name.append(child.label.charAt(i));
+                if (asPrefix && rows[depth + 1][query.length()] <= maxEdits) {
+                    // close enough already, every name below matches
+                    name.append(child.label, i + 1, child.label.length());
+                    page(child.branch, name, null, Integer.MAX_VALUE, results);
+                    descend = false;
+                } else if (smallest > maxEdits) {
+                    descend = false;
+                }
+            }
+            if (descend) {
+                similar(child.branch, name, rows, query, maxEdits, asPrefix, results);
+            }
+            name.setLength(length);
+        }
+    }
+
+    // the branch a whole name ends at, null if there's none
+    private Branch branch(String name) {
+        Branch branch = root;
+        int i = 0;
+        while (i < name.length()) {
+            Node[] children = branch.children;
+            int position = find(children, name.charAt(i));
+            if (position < 0) {
+                return null;
+            }
+            Node child = children[position];
+            if (matched(child.label, name, i) != child.label.length()) {
+                return null;
+            }
+            i += child.label.length();
+            branch = child.branch;
+        }
+        return branch;
+    }
+
+    // binary search on first chars, -(insertion point) - 1 if missing
+    private static int find(Node[] children, char c) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char first = children[middle].label.charAt(0);
+            if (first < c) {
+                low = middle + 1;
+            } else if (first > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static Node[] inserted(Node[] children, int position, Node node) {
+        Node[] copy = new Node[children.length + 1];
+        System.arraycopy(children, 0, copy, 0, position);
+        copy[position] = node;
+        System.arraycopy(children, position, copy, position + 1, children.length - position);
+        return copy;
+    }
+
+    // how much of label matches name[from..]
+    private static int matched(String label, String name, int from) {
+        int matched = 0;
+        while (matched < label.length() && from + matched < name.length()
+                && label.charAt(matched) == name.charAt(from + matched)) {
+            matched++;
+        }
+        return matched;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount.get();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // walks the trie (compressed oops): Node 16 + Branch 16 + child array 16 + 4 per slot + label String 24
+        // with its byte[] 16 + chars (Latin-1)
+        return 16 + 16 + estimatedBytes(root);
+    }
+
+    private long estimatedBytes(Branch branch) {
+        Node[] children = branch.children;
+        long bytes = 16 + 4L * children.length;
+        for (Node child : children) {
+            bytes += 16 + 16 + 24 + 16 + child.label.length() + estimatedBytes(child.branch);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+// Dinic's algorithm: BFS builds a level graph from the source, then DFS pushes a blocking flow
+// using only edges that go one level deeper. O(V^2 E) worst case instead of O(V E^2) for Edmonds-Karp
+// the DFS is iterative (explicit path stack) so long chains can't overflow the call stack
+//https://cp-algorithms.com/graph/dinic.html
+public class DinicFlow implements FlowEngine {
+    private int[] level = new int[0];
+    private int[] nextEdge = new int[0]; // current arc of every node, so dead edges are skipped
+    private int[] queue = new int[0];
+    private int[] path = new int[0];     // edges from the source to the node the DFS is at
+    private int augmentingPaths;         // last call's work, see FlowEngine
+    private long nodeVisits;
+
+    @Override
+    public int maxFlow(FlowNetwork network, int[] residual, int source, int sink) {
+        ensureCapacity(network.nodeCount);
+        int[] offsets = network.offsets;
+        int[] heads = network.heads;
+        int[] reverse = network.reverse;
+        int maxFlow = 0;
+        int paths = 0;
+        nodeVisits = 0;
+
+        while (buildLevels(network, residual, source, sink)) {
+            System.arraycopy(offsets, 0, nextEdge, 0, network.nodeCount);
+            int depth = 0;
+            int u = source;
+
+            while (true) {
+                if (u == sink) {
+                    // found a path, push the bottleneck through it
+                    int pushed = Integer.MAX_VALUE;
+                    for (int i = 0; i < depth; i++) {
+                        pushed = Math.min(pushed, residual[path[i]]);
+                    }
+                    int firstSaturated = -1;
+                    for (int i = 0; i < depth; i++) {
+                        residual[path[i]] -= pushed;
+                        residual[reverse[path[i]]] += pushed;
+                        if (firstSaturated < 0 && residual[path[i]] == 0) {
+                            firstSaturated = i;
+                        }
+                    }
+                    maxFlow += pushed;
+                    paths++;
+                    // back up to the start of the first saturated edge and keep going from there
+                    depth = firstSaturated;
+                    u = depth == 0 ? source : heads[path[depth - 1]];
+                    continue;
+                }
+
+                // advance along the first admissible edge out of u
+                int edge = nextEdge[u];
+                int end = offsets[u + 1];
+                while (edge < end && (residual[edge] <= 0 || level[heads[edge]] != level[u] + 1)) {
+                    edge++;
+                }
+                nextEdge[u] = edge;
+
+                if (edge < end) {
+                    path[depth++] = edge;
+                    u = heads[edge];
+                } else {
+                    // dead end, nothing more goes through u in this phase
+                    level[u] = -1;
+                    if (depth == 0) {
+                        break;
+                    }
+                    depth--;
+                    u = depth == 0 ? source : heads[path[depth - 1]];
+                    nextEdge[u]++;
+                }
+            }
+        }
+        augmentingPaths = paths;
+        return maxFlow;
+    }
+
+    @Override
+    public int lastAugmentingPaths() {
+        return augmentingPaths;
+    }
+
+    @Override
+    public long lastNodeVisits() {
+        return nodeVisits;
+    }
+
+    // BFS from the source over edges with residual capacity, false if the sink is unreachable
+    private boolean buildLevels(FlowNetwork network, int[] residual, int source, int sink) {
+        int[] offsets = network.offsets;
+        int[] heads = network.heads;
+        java.util.Arrays.fill(level, 0, network.nodeCount, -1);
+
+        int head = 0;
+        int tail = 0;
+        level[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+                int dest = heads[edge];
+                if (residual[edge] > 0 && level[dest] < 0) {
+                    level[dest] = level[u] + 1;
+                    queue[tail++] = dest;
+                }
+            }
+        }
+        nodeVisits += head;
+        return level[sink] >= 0;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (level.length < nodeCount) {
+            level = new int[nodeCount];
+            nextEdge = new int[nodeCount];
+            queue = new int[nodeCount];
+            path = new int[nodeCount];
+        }
+    }
+}
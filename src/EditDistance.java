@@ -0,0 +1,51 @@
+// Levenshtein rows for the fuzzy passenger searches: row[j] is the distance between the name walked so far and
+// the first j chars of the query. Walking a trie adds one row per char and a subtree is dropped as soon as the
+// smallest entry of its row is over the limit, since names below can only get further away
+//https://en.wikipedia.org/wiki/Levenshtein_distance
+final class EditDistance {
+    private EditDistance() {
+    }
+
+    // row for the empty name
+    static int[] firstRow(String query) {
+        int[] row = new int[query.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        return row;
+    }
+
+    // row after appending c to the name, returns the smallest entry
+    static int nextRow(int[] previous, int[] row, String query, char c) {
+        row[0] = previous[0] + 1;
+        int smallest = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitute = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+            smallest = Math.min(smallest, row[j]);
+        }
+        return smallest;
+    }
+
+    // whether name is within maxEdits of query (asPrefix: some prefix of name is), one name at a time
+    static boolean within(String query, String name, int maxEdits, boolean asPrefix) {
+        int[] previous = firstRow(query);
+        int[] row = new int[previous.length];
+        if (asPrefix && previous[query.length()] <= maxEdits) {
+            return true;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            int smallest = nextRow(previous, row, query, name.charAt(i));
+            if (asPrefix && row[query.length()] <= maxEdits) {
+                return true;
+            }
+            if (smallest > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[query.length()] <= maxEdits;
+    }
+}
@@ -0,0 +1,107 @@
+// the original Ford-Fulkerson with BFS augmenting paths (Edmonds-Karp)
+// slow on big networks but simple, so it is kept as the reference for cross checking the other engines
+public class EdmondsKarpFlow implements FlowEngine {
+    private int[] parentEdge = new int[0]; // edge used to reach every node in the last BFS
+    private int[] visited = new int[0];    // BFS stamp per node, saves clearing a visited set every round
+    private int[] queue = new int[0];
+    private int stamp = 0;
+    private int augmentingPaths; // last call's work, see FlowEngine
+    private long nodeVisits;
+
+    //https://www.geeksforgeeks.org/ford-fulkerson-algorithm-for-maximum-flow-problem/
+    //but instead of for loop looping backwards from source to sink I used while loops and a current tracker thing
+    @Override
+    public int maxFlow(FlowNetwork network, int[] residual, int start, int end) {
+        ensureCapacity(network.nodeCount);
+        int maxFlow = 0;
+        augmentingPaths = 0;
+        nodeVisits = 0;
+
+        // While there exists an augmenting path
+        while (bfsAugment(network, residual, start, end)) {
+
+            // Find the bottleneck capacity
+            int pathFlow = Integer.MAX_VALUE;
+            int current = end; //start from sink
+            while (current != start) {
+                int edge = parentEdge[current];
+                pathFlow = Math.min(pathFlow, residual[edge]);
+                current = network.tail(edge);
+            }
+
+            // Update residual capacities along the path
+            current = end;
+            while (current != start) {
+                int edge = parentEdge[current];
+                residual[edge] -= pathFlow;
+                residual[network.reverse[edge]] += pathFlow;
+                current = network.tail(edge);
+            }
+
+            // adding to maxflow
+            maxFlow += pathFlow;
+            augmentingPaths++;
+        }
+
+        return maxFlow;
+    }
+
+    @Override
+    public int lastAugmentingPaths() {
+        return augmentingPaths;
+    }
+
+    @Override
+    public long lastNodeVisits() {
+        return nodeVisits;
+    }
+
+    // BFS to find an augmenting path
+    //https://www.geeksforgeeks.org/ford-fulkerson-algorithm-for-maximum-flow-problem/
+    private boolean bfsAugment(FlowNetwork network, int[] residual, int start, int end) {
+        int[] offsets = network.offsets;
+        int[] heads = network.heads;
+        if (++stamp == 0) { // stamp wrapped around, start over
+            java.util.Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start] = stamp;
+
+        while (head < tail) {
+            int u = queue[head++];
+            for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+                int dest = heads[edge];
+                // node not visited and has residual capacity
+                if (visited[dest] != stamp && residual[edge] > 0) {
+                    parentEdge[dest] = edge;
+
+                    // return true, we got to the sink
+                    if (dest == end) {
+                        nodeVisits += head;
+                        return true;
+                    }
+
+                    queue[tail++] = dest;
+                    visited[dest] = stamp;
+                }
+            }
+        }
+
+        // No path found
+        nodeVisits += head;
+        return false;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (visited.length < nodeCount) {
+            parentEdge = new int[nodeCount];
+            visited = new int[nodeCount];
+            queue = new int[nodeCount];
+            stamp = 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Kruskal with parallel cycle filtering for bestMetroSystem, the filter step of Filter-Kruskal
+// (Osipov, Sanders, Singler 2009) over TrackScoreIndex's cached order. That order is already fully sorted,
+// so there's no pivot or partition: the keys (positions in the order) are split in half by index, the better
+// half is run first, then every worse track whose buildings are already connected is thrown away in parallel
+// before recursing on what's left. The sort was paid once in TrackScoreIndex, what's saved here is the
+// union-find work on tracks that would only close a cycle, and the filters use every core.
+// same order as the sequential bestMetroSystem walks, so the chosen tracks come out identical and in the same order
+//https://algo2.iti.kit.edu/documents/fkruskal.pdf
+class FilterKruskal {
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13; // below this just run plain Kruskal
+
+    private final int[] from;
+    private final int[] to;
+    private final int[] rankToTrack; // key -> track index
+    private final ConcurrentDisjointSet sets; // filters read it from many threads
+    private final int wanted;
+    private final int[] chosen;
+    private int count;
+    private int examined; // tracks checked against the forest, by a union or by a filter
+    private int skipped;  // the ones that would have closed a cycle
+
+    private FilterKruskal(int nodeCount, int[] from, int[] to, int[] rankToTrack) {
+        this.from = from;
+        this.to = to;
+        this.rankToTrack = rankToTrack;
+        this.sets = new ConcurrentDisjointSet(nodeCount);
+        this.wanted = nodeCount - 1;
+        this.chosen = new int[Math.max(wanted, 0)];
+    }
+
+    // picks the spanning forest, chosen() has the track indices in the order Kruskal would add them
+    // from/to are dense building indices (negative = track skipped), order is every track index best first
+    static FilterKruskal spanningForest(int nodeCount, int[] from, int[] to, int[] order, ForkJoinPool pool) {
+        int m = order.length;
+        // parallel streams started from inside the pool run on the pool
+        return pool.submit(() -> {
+            // key = position in order, ascending keys = best score first
+            int[] keys = IntStream.range(0, m).parallel()
+                    .filter(r -> from[order[r]] >= 0 && to[order[r]] >= 0)
+                    .toArray();
+
+            FilterKruskal run = new FilterKruskal(nodeCount, from, to, order);
+            run.process(keys);
+            return run;
+        }).join();
+    }
+
+    int[] chosen() {
+        return Arrays.copyOf(chosen, count);
+    }
+
+    // counted like the sequential bestMetroSystem, examined - skipped = tracks chosen. A track a filter threw away
+    // was examined and skipped, the union-find never saw it
+    int examined() {
+        return examined;
+    }
+
+    int skipped() {
+        return skipped;
+    }
+
+    // keys stay ascending the whole way down, ordered parallel filters keep encounter order
+    private void process(int[] keys) {
+        if (done() || keys.length == 0) {
+            return;
+        }
+        if (keys.length <= SEQUENTIAL_THRESHOLD) {
+            kruskal(keys);
+            return;
+        }
+
+        // ascending already, the better half is just the first half
+        int middle = keys.length >>> 1;
+        int[] better = Arrays.copyOfRange(keys, 0, middle);
+        int[] worse = Arrays.copyOfRange(keys, middle, keys.length);
+
+        process(better);
+        if (done()) {
+            return;
+        }
+        // nobody unions while this runs, so the parallel finds see a fixed forest
+        int[] survivors = IntStream.of(worse).parallel().filter(k -> {
+            int track = rankToTrack[k];
+            return !sets.connected(from[track], to[track]);
+        }).toArray();
+        examined += worse.length - survivors.length;
+        skipped += worse.length - survivors.length;
+        process(survivors);
+    }
+
+    // plain Kruskal over ascending keys
+    private void kruskal(int[] sortedKeys) {
+        for (int key : sortedKeys) {
+            if (done()) {
+                return;
+            }
+            int track = rankToTrack[key];
+            examined++;
+            if (sets.union(from[track], to[track])) {
+                chosen[count++] = track;
+            } else {
+                skipped++;
+            }
+        }
+    }
+
+    private boolean done() {
+        return count >= wanted;
+    }
+}
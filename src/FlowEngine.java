@@ -0,0 +1,16 @@
+// strategy interface for the max flow behind McMetro.maxPassengers
+// engines push flow on the residual array they are given (the network itself is read only) and keep their
+// scratch arrays between calls, so one engine instance should only be used by one thread at a time
+public interface FlowEngine {
+    int maxFlow(FlowNetwork network, int[] residual, int source, int sink);
+
+    // work done by the last maxFlow call, for MetroMetrics. Engines that don't count it say 0
+    default int lastAugmentingPaths() {
+        return 0;
+    }
+
+    // nodes taken off a BFS queue (or discharged, for push-relabel) during the last maxFlow call
+    default long lastNodeVisits() {
+        return 0;
+    }
+}
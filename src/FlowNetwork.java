@@ -0,0 +1,128 @@
+// frozen compressed sparse row (CSR) version of the metro graph used by the flow engines
+// buildings are dense ints 0..nodeCount-1 and every track becomes a forward edge plus its residual (reverse) edge,
+// all stored in parallel int arrays so the hot loops never hash, box or chase pointers
+// the network itself is never changed by a query: residual capacities live in a separate int[] per query
+// (see newResidual/resetResidual) so one network can answer any number of source/sink queries
+// capacity changes (McMetro.updateCapacity etc.) make a new network sharing the topology arrays, see withCapacities
+//https://en.wikipedia.org/wiki/Sparse_matrix#Compressed_sparse_row_(CSR,_CRS_or_Yale_format)
+public class FlowNetwork {
+    final int nodeCount;
+    final int[] offsets;   // edges of node u are offsets[u] .. offsets[u + 1] - 1
+    final int[] heads;     // node every edge points to
+    final int[] capacity;  // capacity the edge started with (0 for residual edges)
+    final int[] reverse;   // index of the paired edge going the other way
+    final int[] trackEdge; // forward edge of each track, -1 if the track was skipped
+    final int[] edgeTrack; // track behind every edge (forward and residual)
+
+    private FlowNetwork(int nodeCount, int edgeCount, int trackCount) {
+        this.nodeCount = nodeCount;
+        this.offsets = new int[nodeCount + 1];
+        this.heads = new int[edgeCount];
+        this.capacity = new int[edgeCount];
+        this.reverse = new int[edgeCount];
+        this.trackEdge = new int[trackCount];
+        this.edgeTrack = new int[edgeCount];
+    }
+
+    // same topology, different capacities (the int arrays are shared, they are never written after build)
+    private FlowNetwork(FlowNetwork topology, int[] capacity) {
+        this.nodeCount = topology.nodeCount;
+        this.offsets = topology.offsets;
+        this.heads = topology.heads;
+        this.capacity = capacity;
+        this.reverse = topology.reverse;
+        this.trackEdge = topology.trackEdge;
+        this.edgeTrack = topology.edgeTrack;
+    }
+
+    // from/to are dense node indices per track (negative means one of the buildings is missing so the track is skipped)
+    // edges keep the order the tracks came in, same as the old adjacency lists
+    static FlowNetwork build(int nodeCount, int[] from, int[] to, int[] capacity) {
+        int trackCount = from.length;
+        int edgeCount = 0;
+        int[] degree = new int[nodeCount + 1];
+        for (int i = 0; i < trackCount; i++) {
+            if (from[i] >= 0 && to[i] >= 0) {
+                degree[from[i] + 1]++;
+                degree[to[i] + 1]++;
+                edgeCount += 2;
+            }
+        }
+
+        FlowNetwork network = new FlowNetwork(nodeCount, edgeCount, trackCount);
+        for (int u = 0; u < nodeCount; u++) {
+            network.offsets[u + 1] = network.offsets[u] + degree[u + 1];
+        }
+
+        int[] fill = new int[nodeCount]; // next free slot of every node
+        System.arraycopy(network.offsets, 0, fill, 0, nodeCount);
+        for (int i = 0; i < trackCount; i++) {
+            if (from[i] < 0 || to[i] < 0) {
+                network.trackEdge[i] = -1;
+                continue;
+            }
+            int forward = fill[from[i]]++;
+            int backward = fill[to[i]]++;
+            network.heads[forward] = to[i];
+            network.heads[backward] = from[i];
+            network.capacity[forward] = capacity[i];
+            network.reverse[forward] = backward;
+            network.reverse[backward] = forward;
+            network.trackEdge[i] = forward;
+            network.edgeTrack[forward] = i;
+            network.edgeTrack[backward] = i;
+        }
+        return network;
+    }
+
+    // fresh residual capacities, i.e. no flow anywhere yet
+    int[] newResidual() {
+        return capacity.clone();
+    }
+
+    // wipes the flow of a previous query out of a residual buffer (one arraycopy, no allocation)
+    void resetResidual(int[] residual) {
+        System.arraycopy(capacity, 0, residual, 0, capacity.length);
+    }
+
+    // copy on write: same topology with new capacities, this network stays untouched for anyone still using it
+    FlowNetwork withCapacities(int[] capacity) {
+        return new FlowNetwork(this, capacity);
+    }
+
+    // flow currently on a forward edge according to a residual buffer
+    int flow(int[] residual, int edge) {
+        return capacity[edge] - residual[edge];
+    }
+
+    // every track usable both ways with its full capacity, i.e. the residual edge gets the same capacity
+    // used for the Gomory-Hu tree which only exists for undirected graphs
+    FlowNetwork undirected() {
+        int[] both = capacity.clone();
+        for (int edge : trackEdge) {
+            if (edge >= 0) {
+                both[reverse[edge]] = capacity[edge];
+            }
+        }
+        return new FlowNetwork(this, both);
+    }
+
+    // capacity of the first self loop on u (a query from a building to itself), 0 if there isn't one
+    int selfLoopCapacity(int u) {
+        for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+            if (heads[edge] == u) {
+                return capacity[edge];
+            }
+        }
+        return 0;
+    }
+
+    int edgeCount() {
+        return heads.length;
+    }
+
+    // node an edge starts from, i.e. the head of its reverse edge
+    int tail(int edge) {
+        return heads[reverse[edge]];
+    }
+}
@@ -0,0 +1,86 @@
+// Gomory-Hu (flow equivalent) tree of the undirected network, built with Gusfield's algorithm:
+// n - 1 max flow runs and then the max flow between any two buildings is the smallest weight
+// on the tree path between them, so all pairs capacity planning doesn't need n^2 flow runs
+// only valid for undirected graphs, for the one way tracks of McMetro it is an upper bound (see McMetro.FlowMode)
+//https://en.wikipedia.org/wiki/Gomory%E2%80%93Hu_tree
+//https://courses.engr.illinois.edu/cs598csc/sp2010/Lectures/Lecture6.pdf (Gusfield's simplification)
+public class GomoryHuTree {
+    private final int[] parent; // parent[u] < u, node 0 is the root
+    private final int[] weight; // min cut between u and parent[u]
+    private final int[] depth;
+
+    private GomoryHuTree(int[] parent, int[] weight, int[] depth) {
+        this.parent = parent;
+        this.weight = weight;
+        this.depth = depth;
+    }
+
+    // network should already be undirected (FlowNetwork.undirected)
+    static GomoryHuTree build(FlowNetwork network, FlowEngine engine) {
+        int n = network.nodeCount;
+        int[] parent = new int[n];
+        int[] weight = new int[n];
+        int[] residual = network.newResidual();
+        boolean[] sinkSide = new boolean[n];
+        int[] queue = new int[n];
+
+        for (int s = 1; s < n; s++) {
+            int t = parent[s];
+            network.resetResidual(residual);
+            weight[s] = engine.maxFlow(network, residual, s, t);
+
+            // sink side of the min cut = everything that can still reach t in the residual graph
+            // (works for push-relabel's preflow too, not just for augmenting path engines)
+            java.util.Arrays.fill(sinkSide, false);
+            int head = 0;
+            int tail = 0;
+            sinkSide[t] = true;
+            queue[tail++] = t;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int edge = network.offsets[v]; edge < network.offsets[v + 1]; edge++) {
+                    int u = network.heads[edge];
+                    if (!sinkSide[u] && residual[network.reverse[edge]] > 0) {
+                        sinkSide[u] = true;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+
+            for (int i = s + 1; i < n; i++) {
+                if (!sinkSide[i] && parent[i] == t) {
+                    parent[i] = s;
+                }
+            }
+        }
+
+        int[] depth = new int[n];
+        for (int u = 1; u < n; u++) {
+            depth[u] = depth[parent[u]] + 1; // parent[u] < u so it is already done
+        }
+        return new GomoryHuTree(parent, weight, depth);
+    }
+
+    // max flow between two dense node indices, O(tree path length)
+    int minCut(int u, int v) {
+        int min = Integer.MAX_VALUE;
+        while (u != v) {
+            if (depth[u] >= depth[v]) {
+                min = Math.min(min, weight[u]);
+                u = parent[u];
+            } else {
+                min = Math.min(min, weight[v]);
+                v = parent[v];
+            }
+        }
+        return min;
+    }
+
+    int parent(int u) {
+        return parent[u];
+    }
+
+    int weight(int u) {
+        return weight[u];
+    }
+}
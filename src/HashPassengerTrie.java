@@ -0,0 +1,115 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the original passenger trie: one node per character, children in a HashMap<Character, TrieNode>
+// simple, but every character costs a node, a map, its table and an entry (well over a hundred bytes)
+//https://www.geeksforgeeks.org/trie-memory-optimization-using-hash-map/
+class HashPassengerTrie implements PassengerIndex {
+    private static class TrieNode {
+        Map<Character, TrieNode> map;
+        boolean isEndOfWord;
+
+        public TrieNode() {
+            map = new HashMap<>();
+            isEndOfWord = false;
+        }
+    }
+
+    private final TrieNode root = new TrieNode(); // trie root
+    private int size;
+    private int nodeCount = 1;
+    private int innerNodes; // nodes with at least one child, only those have allocated a map table
+
+    @Override
+    public void add(String name) {
+        TrieNode current = root;
+
+        for (char c : name.toCharArray()) {
+            if(!current.map.containsKey(c)){
+                if (current.map.isEmpty()) {
+                    innerNodes++;
+                }
+                current.map.put(c, new TrieNode());
+                nodeCount++;
+            }
+            current = current.map.get(c);
+        }
+        if (!current.isEndOfWord) {
+            current.isEndOfWord = true;
+            size++;
+        }
+    }
+
+    @Override
+    public boolean remove(String name) {
+        // keep the path so empty branches can be cut off on the way back up
+        TrieNode[] path = new TrieNode[name.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < name.length(); i++) {
+            path[i + 1] = path[i].map.get(name.charAt(i));
+            if (path[i + 1] == null) {
+                return false;
+            }
+        }
+        TrieNode last = path[name.length()];
+        if (!last.isEndOfWord) {
+            return false;
+        }
+        last.isEndOfWord = false;
+        size--;
+
+        for (int i = name.length(); i > 0 && !path[i].isEndOfWord && path[i].map.isEmpty(); i--) {
+            path[i - 1].map.remove(name.charAt(i - 1));
+            nodeCount--;
+            if (path[i - 1].map.isEmpty()) {
+                innerNodes--;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void collect(String prefix, List<String> results) {
+        TrieNode current = root;
+
+        for (char c : prefix.toCharArray()) {
+            if (!current.map.containsKey(c)) {
+                return; // If prefix not found, nothing to add
+            }
+            current = current.map.get(c);
+        }
+
+        traverseTrie(current, prefix, results);
+    }
+
+    // helper method
+    //https://github.com/chenleishen/PrefixMatcher/blob/master/PrefixMatcher.java
+    private void traverseTrie(TrieNode node, String prefix, List<String> results) {
+        if (node.isEndOfWord) {
+            results.add(prefix);
+        }
+        for (Map.Entry<Character, TrieNode> mapElement : node.map.entrySet()) { //https://www.geeksforgeeks.org/traverse-through-a-hashmap-in-java/
+            char next = mapElement.getKey();
+            TrieNode child = mapElement.getValue();
+            traverseTrie(child, prefix + next, results);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // compressed oops: TrieNode 16 + HashMap 48 per node, a 32 byte HashMap.Node per child link,
+        // and a 16 slot table (16 + 16 * 4) once a node has children. Character boxes below 128 are cached
+        return (long) nodeCount * (16 + 48) + (long) (nodeCount - 1) * 32 + (long) innerNodes * (16 + 16 * 4);
+    }
+}
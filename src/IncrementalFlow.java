@@ -0,0 +1,117 @@
+// repairs an existing max flow after capacities change instead of recomputing it from zero
+// raising a capacity keeps the flow valid, so only the final augmentation has to run. Lowering an edge (u, v)
+// below its flow leaves u with extra flow and v short of it, which is fixed by
+//   1. rerouting as much as possible from u to v around the edge
+//   2. sending what is left back from u to the source and pulling it from the sink back to v
+//      (once no reroute is possible the leftover sits on source-sink paths, so both residual paths exist)
+// and then the caller augments source -> sink again with its FlowEngine to get back to a max flow.
+// everything runs on the residual buffer of the last query, so a single track change costs a few BFS
+// instead of a full max flow run
+//https://en.wikipedia.org/wiki/Flow_network#Residuals (reverse edges carry the flow that can be cancelled)
+class IncrementalFlow {
+    private int[] parentEdge = new int[0];
+    private int[] visited = new int[0];
+    private int[] queue = new int[0];
+    private int stamp = 0;
+
+    // edge's capacity in network was just changed from oldCapacity, fixes the residuals of a max flow
+    // from source to sink and returns how much the flow value dropped (0 if the flow was still valid)
+    int capacityChanged(FlowNetwork network, int[] residual, int edge, int oldCapacity, int source, int sink) {
+        int flow = oldCapacity - residual[edge];
+        int newCapacity = network.capacity[edge];
+        if (flow <= newCapacity) {
+            residual[edge] = newCapacity - flow;
+            return 0;
+        }
+
+        // clamp the flow to the new capacity
+        int excess = flow - newCapacity;
+        residual[edge] = 0;
+        residual[network.reverse[edge]] -= excess;
+        int u = network.tail(edge);
+        int v = network.heads[edge];
+
+        excess -= augment(network, residual, u, v, excess);
+        if (excess > 0) {
+            if (u != source) {
+                augment(network, residual, u, source, excess);
+            }
+            if (v != sink) {
+                augment(network, residual, sink, v, excess);
+            }
+        }
+        return excess;
+    }
+
+    // push-relabel only computes a preflow (excess can be stuck on nodes that can't reach the sink),
+    // this sends any such excess back to the source so the residual describes a real flow again.
+    // doesn't change the flow value, a BFS path may pass through the sink but then enters and leaves it
+    void returnExcess(FlowNetwork network, int[] residual, int source, int sink) {
+        for (int u = 0; u < network.nodeCount; u++) {
+            if (u == source || u == sink) {
+                continue;
+            }
+            // net inflow = sum over u's edges of (residual - capacity), for forward and reverse edges alike
+            long excess = 0;
+            for (int edge = network.offsets[u]; edge < network.offsets[u + 1]; edge++) {
+                excess += residual[edge] - network.capacity[edge];
+            }
+            if (excess > 0) {
+                augment(network, residual, u, source, (int) excess);
+            }
+        }
+    }
+
+    // pushes up to limit from one node to another along BFS paths in the residual graph, returns how much went
+    int augment(FlowNetwork network, int[] residual, int from, int to, int limit) {
+        ensureCapacity(network.nodeCount);
+        int pushed = 0;
+        while (pushed < limit && findPath(network, residual, from, to)) {
+            int amount = limit - pushed;
+            for (int node = to; node != from; node = network.tail(parentEdge[node])) {
+                amount = Math.min(amount, residual[parentEdge[node]]);
+            }
+            for (int node = to; node != from; node = network.tail(parentEdge[node])) {
+                residual[parentEdge[node]] -= amount;
+                residual[network.reverse[parentEdge[node]]] += amount;
+            }
+            pushed += amount;
+        }
+        return pushed;
+    }
+
+    private boolean findPath(FlowNetwork network, int[] residual, int from, int to) {
+        if (++stamp == 0) {
+            java.util.Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited[from] = stamp;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int edge = network.offsets[u]; edge < network.offsets[u + 1]; edge++) {
+                int dest = network.heads[edge];
+                if (visited[dest] != stamp && residual[edge] > 0) {
+                    parentEdge[dest] = edge;
+                    if (dest == to) {
+                        return true;
+                    }
+                    visited[dest] = stamp;
+                    queue[tail++] = dest;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (visited.length < nodeCount) {
+            parentEdge = new int[nodeCount];
+            visited = new int[nodeCount];
+            queue = new int[nodeCount];
+            stamp = 0;
+        }
+    }
+}
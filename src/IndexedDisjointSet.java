@@ -0,0 +1,26 @@
+import java.util.*;
+
+// same add/find/union as NaiveDisjointSet for any T, but the elements are only hashed once to get a dense index
+// and the actual work happens in an IntDisjointSet (no boxed ranks, no recursion)
+public class IndexedDisjointSet<T> {
+    private final HashMap<T, Integer> index = new HashMap<>();
+    private final ArrayList<T> elements = new ArrayList<>(); // element of every index
+    private final IntDisjointSet sets = new IntDisjointSet(0);
+
+    // adding something twice does nothing
+    void add(T element) {
+        if (!index.containsKey(element)) {
+            index.put(element, sets.add());
+            elements.add(element);
+        }
+    }
+
+    // like NaiveDisjointSet this throws a NullPointerException for elements that were never added
+    T find(T a) {
+        return elements.get(sets.find(index.get(a)));
+    }
+
+    void union(T a, T b) {
+        sets.union(index.get(a), index.get(b));
+    }
+}
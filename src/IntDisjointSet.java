@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+// union-find over dense ints 0..n-1 kept in two int arrays, no hashing and no boxing
+// find is iterative with path halving (every node on the way points to its grandparent), union by size keeps
+// the trees under log2 n deep
+//https://en.wikipedia.org/wiki/Disjoint-set_data_structure#Finding_set_representatives
+public class IntDisjointSet {
+    private int[] parent;
+    private int[] size;
+    private int count; // how many elements have been added
+    private int sets;  // how many disjoint sets there are
+
+    // elements 0..n-1 each in their own set
+    IntDisjointSet(int n) {
+        parent = new int[Math.max(n, 1)];
+        size = new int[parent.length];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        count = n;
+        sets = n;
+    }
+
+    // adds the next element (== current count) as its own set and returns it
+    int add() {
+        if (count == parent.length) {
+            parent = Arrays.copyOf(parent, count * 2);
+            size = Arrays.copyOf(size, count * 2);
+        }
+        parent[count] = count;
+        size[count] = 1;
+        sets++;
+        return count++;
+    }
+
+    int find(int a) {
+        if (a < 0 || a >= count) {
+            throw new IndexOutOfBoundsException("element " + a + " was never added");
+        }
+        while (parent[a] != a) {
+            parent[a] = parent[parent[a]]; // path halving
+            a = parent[a];
+        }
+        return a;
+    }
+
+    // merges the sets of a and b, false if they were already together
+    boolean union(int a, int b) {
+        int aRoot = find(a);
+        int bRoot = find(b);
+        if (aRoot == bRoot) {
+            return false;
+        }
+        // smaller tree goes under the bigger one
+        if (size[aRoot] < size[bRoot]) {
+            int swap = aRoot;
+            aRoot = bRoot;
+            bRoot = swap;
+        }
+        parent[bRoot] = aRoot;
+        size[aRoot] += size[bRoot];
+        sets--;
+        return true;
+    }
+
+    boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    int size() {
+        return count;
+    }
+
+    int setCount() {
+        return sets;
+    }
+}
@@ -0,0 +1,31 @@
+// latencies of one operation in log2 buckets, counts[i] = calls that took [2^i, 2^(i+1)) ns (bucket 0 also
+// takes 0 ns). Percentiles come back as the upper end of their bucket, so within a factor of 2 of the truth
+public record LatencyHistogram(long[] counts) {
+    long count() {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    // upper bound in ns of the fraction-th quantile (0.99 = p99), 0 if nothing was recorded
+    long percentileNanos(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("fraction has to be between 0 and 1, got " + fraction);
+        }
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+// binary min-heap of primitive longs, for the ticket checker code that packs a whole shift (or a checker and its
+// end time) into one long. No boxing and no objects per entry
+class LongHeap {
+    private long[] heap;
+    private int size;
+
+    LongHeap(int capacity) {
+        heap = new long[Math.max(capacity, 1)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long peek() {
+        return heap[0];
+    }
+
+    void push(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = value;
+        siftUp(size++);
+    }
+
+    long pop() {
+        long top = heap[0];
+        heap[0] = heap[--size];
+        siftDown(0);
+        return top;
+    }
+
+    // pop and push in one sift, returns what was on top
+    long replaceTop(long value) {
+        long top = heap[0];
+        heap[0] = value;
+        siftDown(0);
+        return top;
+    }
+
+    // what's in the heap, sorted, the heap itself is left as it is
+    long[] sortedCopy() {
+        long[] copy = Arrays.copyOf(heap, size);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private void siftUp(int i) {
+        long value = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    private void siftDown(int i) {
+        long value = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+}
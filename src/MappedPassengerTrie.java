@@ -0,0 +1,182 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// read only radix trie served straight from a memory mapped file, so a restart doesn't replay the roster
+// and the index lives off heap (the OS pages it in as searches touch it)
+// file layout, big endian:
+//   header  magic, version, node count, char count, name count             5 ints
+//   nodes   label start, label length (top bit = terminal), first child,
+//           next sibling, names in subtree                                 5 ints per node
+//   chars   the label pool                                                 2 bytes per char
+// nodes are written breadth first so a node's children sit next to each other. One mapping tops out at 2GB
+class MappedPassengerTrie extends RadixTrieReader {
+    private static final int MAGIC = 0x50415353; // "PASS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * 4;
+    private static final int NODE_BYTES = 5 * 4;
+    private static final int TERMINAL = 1 << 31;
+
+    private final ByteBuffer buffer; // absolute reads only, so searches from several threads are fine
+    private final int nodeCount;
+    private final int size;
+    private final int charBase;
+
+    private MappedPassengerTrie(ByteBuffer buffer, int nodeCount, int size) {
+        this.buffer = buffer;
+        this.nodeCount = nodeCount;
+        this.size = size;
+        this.charBase = HEADER_BYTES + nodeCount * NODE_BYTES;
+    }
+
+    static MappedPassengerTrie open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is " + length + " bytes, more than one mapping can hold");
+            }
+            if (length < HEADER_BYTES) {
+                throw new IOException(file + " is not a passenger index, too short");
+            }
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a passenger index");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " has passenger index version " + buffer.getInt(4) + ", expected " + VERSION);
+            }
+            int nodeCount = buffer.getInt(8);
+            int charCount = buffer.getInt(12);
+            int size = buffer.getInt(16);
+            if (nodeCount < 1 || charCount < 0 || HEADER_BYTES + (long) nodeCount * NODE_BYTES + charCount * 2L != length) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            return new MappedPassengerTrie(buffer, nodeCount, size);
+        }
+    }
+
+    // writes any radix trie in the format above, dropping branches removed from it
+    static void write(RadixTrieReader trie, Path file) throws IOException {
+        // breadth first renumbering, order[new id] = old id
+        int[] order = new int[16];
+        int nodeCount = 1;
+        long charCount = 0;
+        for (int next = 0; next < nodeCount; next++) {
+            for (int child = trie.firstChild(order[next]); child != NONE; child = trie.nextSibling(child)) {
+                if (nodeCount == order.length) {
+                    order = Arrays.copyOf(order, nodeCount * 2);
+                }
+                order[nodeCount++] = child;
+                charCount += trie.labelLength(child);
+            }
+        }
+        if (HEADER_BYTES + (long) nodeCount * NODE_BYTES + charCount * 2 > Integer.MAX_VALUE) {
+            throw new IOException("passenger index too big for one mapping: " + nodeCount + " nodes, " + charCount + " chars");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt((int) charCount);
+            out.writeInt(trie.size());
+
+            // same numbering as above: a node's children got the next free ids in one run, so its first child
+            // is nextId and every child but the last has its next sibling right after it
+            int nextId = 1;
+            int labelStart = 0;
+            for (int id = 0; id < nodeCount; id++) {
+                int node = order[id];
+                int firstChild = trie.firstChild(node) == NONE ? NONE : nextId;
+                for (int child = trie.firstChild(node); child != NONE; child = trie.nextSibling(child)) {
+                    nextId++;
+                }
+                out.writeInt(labelStart);
+                out.writeInt(trie.labelLength(node) | (trie.terminal(node) ? TERMINAL : 0));
+                out.writeInt(firstChild);
+                out.writeInt(trie.nextSibling(node) == NONE ? NONE : id + 1);
+                out.writeInt(trie.count(node));
+                labelStart += trie.labelLength(node);
+            }
+            for (int id = 0; id < nodeCount; id++) {
+                int node = order[id];
+                int start = trie.labelStart(node);
+                for (int i = 0; i < trie.labelLength(node); i++) {
+                    out.writeChar(trie.poolChar(start + i));
+                }
+            }
+        }
+    }
+
+    @Override
+    int firstChild(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 8);
+    }
+
+    @Override
+    int nextSibling(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 12);
+    }
+
+    @Override
+    int labelStart(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES);
+    }
+
+    @Override
+    int labelLength(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 4) & ~TERMINAL;
+    }
+
+    @Override
+    boolean terminal(int node) {
+        return (buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 4) & TERMINAL) != 0;
+    }
+
+    @Override
+    int count(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 16);
+    }
+
+    @Override
+    char poolChar(int index) {
+        return buffer.getChar(charBase + index * 2);
+    }
+
+    @Override
+    public void add(String name) {
+        throw new UnsupportedOperationException("mapped passenger index is read only");
+    }
+
+    @Override
+    public boolean remove(String name) {
+        throw new UnsupportedOperationException("mapped passenger index is read only");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // the trie itself is off heap, see mappedBytes
+    @Override
+    public long estimatedBytes() {
+        return 64;
+    }
+
+    long mappedBytes() {
+        return buffer.capacity();
+    }
+}
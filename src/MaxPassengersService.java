@@ -0,0 +1,128 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// thread safe maxPassengers for lots of concurrent queries against one network
+// the FlowNetwork is shared read only, every query borrows a workspace (engine + residual buffer) from a pool
+// so no two threads ever touch the same scratch arrays. Pooling instead of ThreadLocal means it works the same
+// on a fixed platform pool and on virtual threads (where every task is a new thread)
+public class MaxPassengersService {
+    private final McMetro metro;
+    private final Supplier<FlowEngine> engineFactory;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+
+    private static class Workspace {
+        final FlowEngine engine;
+        int[] residual = new int[0];
+
+        Workspace(FlowEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    // engineFactory makes a new engine for every workspace, e.g. DinicFlow::new
+    // the executor is only used for submit and batches and is not shut down by the service
+    MaxPassengersService(McMetro metro, Supplier<FlowEngine> engineFactory, ExecutorService executor) {
+        this.metro = metro;
+        this.engineFactory = engineFactory;
+        this.executor = executor;
+    }
+
+    MaxPassengersService(McMetro metro, ExecutorService executor) {
+        this(metro, DinicFlow::new, executor);
+    }
+
+    // fixed pool of daemon platform threads
+    static ExecutorService platformThreads(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "max-passengers-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // one virtual thread per task, looked up reflectively so the project still builds on older JDKs
+    static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or newer", e);
+        }
+    }
+
+    // same answer as McMetro.maxPassengers, runs on the calling thread and is safe to call from many at once
+    // counts in the metro's MetroMetrics
+    int maxPassengers(BuildingID start, BuildingID end) {
+        MetroMetrics metrics = metro.metrics();
+        long begin = metrics.begin();
+        int source = metro.indexOf(start);
+        int sink = metro.indexOf(end);
+        if (source < 0 || sink < 0) {
+            metrics.maxPassengersAnswered(begin, false);
+            return 0;
+        }
+        FlowNetwork network = metro.network();
+        if (source == sink) {
+            metrics.maxPassengersAnswered(begin, false);
+            return network.selfLoopCapacity(source);
+        }
+
+        Workspace workspace = workspaces.poll();
+        if (workspace == null) {
+            workspace = new Workspace(engineFactory.get());
+        }
+        try {
+            if (workspace.residual.length != network.edgeCount()) {
+                workspace.residual = network.newResidual();
+            } else {
+                network.resetResidual(workspace.residual);
+            }
+            int flow = workspace.engine.maxFlow(network, workspace.residual, source, sink);
+            metrics.maxPassengersFlow(begin, workspace.engine);
+            return flow;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    // runs the query on the executor
+    CompletableFuture<Integer> submit(BuildingID start, BuildingID end) {
+        return CompletableFuture.supplyAsync(() -> maxPassengers(start, end), executor);
+    }
+
+    // answers every trip, results[i] belongs to trips.get(i)
+    // trips are split into a few chunks per core so the executor isn't flooded with one task per query
+    int[] maxPassengers(List<Trip> trips) {
+        int[] results = new int[trips.size()];
+        if (trips.isEmpty()) {
+            return results;
+        }
+        int chunks = Math.min(trips.size(), Runtime.getRuntime().availableProcessors() * 4);
+        int chunkSize = (trips.size() + chunks - 1) / chunks;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < trips.size(); from += chunkSize) {
+            int start = from;
+            int end = Math.min(trips.size(), from + chunkSize);
+            futures.add(executor.submit(() -> {
+                for (int i = start; i < end; i++) {
+                    Trip trip = trips.get(i);
+                    results[i] = maxPassengers(trip.start(), trip.end());
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the batch");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+        return results;
+    }
+}
@@ -1,258 +1,469 @@
 import java.util.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.lang.Math.*;
 
 public class McMetro {
     protected Track[] tracks;
     protected HashMap<BuildingID, Building> buildingTable = new HashMap<>();
-    private HashMap<BuildingID, List<Edge>> adjList = new HashMap<>();
-    private final TrieNode root = new TrieNode(); // trie root
-    private final Set<String> allPassengers = new HashSet<>(); // tracking passengers, using Hashset only need to return one name
-
-    private static class Edge {
-        BuildingID destination;
-        int capacity;
-        int resCapacity;
-        Edge resGraphEdge;
-
-        Edge(BuildingID dest, int capacity) {
-            this.destination = dest;
-            this.capacity = capacity;
-            this.resCapacity = capacity;
-        }
-    }
-
-
-    private static class TrieNode {
-        Map<Character, TrieNode> map;
-        boolean isEndOfWord;
-
-        public TrieNode() {
-            map = new HashMap<>();
-            isEndOfWord = false;
-        }
+    private NetworkColumns columns; // when built from columns: tracks and buildingTable stay empty until materialize
+    private int[] columnOccupants; // when built from columns: occupants of buildingIds[i], until materialize
+    private int[] buildingIds = new int[0]; // sorted raw ids, the dense index of a building is its position in here
+    private FlowNetwork network; // CSR graph built once in the constructor, every graph algorithm runs on it
+    private int[] residual; // pooled residual buffer, after a query it holds that query's max flow
+    private int lastSource = -1; // the query the residual buffer belongs to, kept up to date by the track/occupant
+    private int lastSink = -1;   // updates so asking it again doesn't rerun the flow (see IncrementalFlow)
+    private int lastFlow;
+    private final IncrementalFlow repair = new IncrementalFlow();
+    private FlowEngine flowEngine = new DinicFlow(); // max flow strategy, see FlowEngine
+    private GomoryHuTree gomoryHuTree; // built the first time an UNDIRECTED_APPROXIMATION query comes in
+    private TrackScoreIndex trackScores; // scores and sorted tracks for bestMetroSystem, built on first use
+    private volatile PassengerIndex passengers = new RadixPassengerTrie(); // passenger name trie, see PassengerIndex
+                                                    // with a ConcurrentPassengerTrie any thread can add and search
+    private volatile MetroMetrics metrics = MetroMetrics.DISABLED; // counters and latencies, see setMetrics
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16; // shifts before hireTicketCheckers sorts in parallel
+
+
+    // how maxPassengers reads the tracks
+    enum FlowMode {
+        DIRECTED,                // exact, tracks only go from start to end building (one max flow per query)
+        UNDIRECTED_APPROXIMATION // every track usable both ways, answered from a Gomory-Hu tree built once.
+                                 // NOT the directed answer, only an upper bound of it for one way tracks
     }
 
 
 
     // Constructor to initialize tracks and buildings
     McMetro(Track[] tracks, Building[] buildings) {
+        this(tracks, buildings, new DinicFlow());
+    }
+
+    // same as above but lets the caller pick the max flow engine (EdmondsKarpFlow is the reference one)
+    McMetro(Track[] tracks, Building[] buildings, FlowEngine flowEngine) {
         this.tracks = tracks;
+        this.flowEngine = flowEngine;
 
         // Populate buildings table
         if (buildings != null) {
             for (Building building : buildings) {
                 buildingTable.putIfAbsent(building.id(), building);
-                adjList.putIfAbsent(building.id(), new ArrayList<>()); // Ensure adjacency list entry
             }
         }
 
-        // Populate the adjacency list
-        if (tracks != null) {
-            for (Track track : tracks) {
-                BuildingID source = track.startBuildingId();
-                BuildingID dest = track.endBuildingId();
-
-                //bug fixed- was doing flow problem only with track capacities when it should be the min between track capacity
-                //and amount of people in each building
-                int trackCapacity = track.capacity();
-                //yay it works now- I am sad this took me almost two hours
-                int capacity = 0;
-
-                if (buildingTable.containsKey(source) && buildingTable.containsKey(dest)) {
-                    capacity = Math.min(trackCapacity,
-                            Math.min(buildingTable.get(source).occupants(),
-                                    buildingTable.get(dest).occupants()));
-
-
+        indexBuildings();
+        buildNetwork();
+    }
 
+    // straight from int columns (NetworkLoader), no Building or Track records: buildings are indexed and the CSR
+    // network built from the columns themselves. Queries never need the records, the methods that change the
+    // network make them the first time they're called (materialize), until then tracks is null.
+    // Dinic like the other constructor, setFlowEngine picks another one (no (columns, engine) overload, it would
+    // make new McMetro(null, null) ambiguous)
+    McMetro(NetworkColumns columns) {
+        this.columns = columns;
+
+        // sorted distinct ids, packed (id, position) so equal ids keep the first building like putIfAbsent does
+        int[] rawIds = columns.buildingIds();
+        long[] byId = new long[rawIds.length];
+        for (int i = 0; i < rawIds.length; i++) {
+            byId[i] = ((long) rawIds[i] << 32) | i;
+        }
+        if (byId.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(byId);
+        } else {
+            Arrays.sort(byId);
+        }
+        int[] ids = new int[byId.length];
+        int[] occupants = new int[byId.length];
+        int count = 0;
+        for (long entry : byId) {
+            int id = (int) (entry >> 32);
+            if (count > 0 && ids[count - 1] == id) {
+                continue;
+            }
+            ids[count] = id;
+            occupants[count++] = columns.occupants()[(int) entry];
+        }
+        buildingIds = Arrays.copyOf(ids, count);
+        columnOccupants = Arrays.copyOf(occupants, count);
+
+        int trackCount = columns.trackCount();
+        int[] from = new int[trackCount];
+        int[] to = new int[trackCount];
+        int[] capacity = new int[trackCount];
+        for (int i = 0; i < trackCount; i++) {
+            from[i] = Arrays.binarySearch(buildingIds, columns.starts()[i]);
+            to[i] = Arrays.binarySearch(buildingIds, columns.ends()[i]);
+            if (from[i] >= 0 && to[i] >= 0) {
+                capacity[i] = Math.min(columns.capacities()[i], Math.min(occupants[from[i]], occupants[to[i]]));
+            }
+        }
+        useNetwork(FlowNetwork.build(count, from, to, capacity));
+    }
 
+    // makes the Track and Building records of a McMetro built from columns, once. Same ids, shared BuildingIDs
+    private void materialize() {
+        NetworkColumns source = columns;
+        if (source == null) {
+            return;
+        }
+        BuildingID[] shared = new BuildingID[buildingIds.length];
+        for (int i = 0; i < source.buildingCount(); i++) {
+            BuildingID id = buildingId(shared, source.buildingIds()[i]);
+            buildingTable.putIfAbsent(id, new Building(id, source.occupants()[i]));
+        }
+        Track[] made = new Track[source.trackCount()];
+        for (int i = 0; i < made.length; i++) {
+            made[i] = new Track(new TrackID(source.trackIds()[i]), buildingId(shared, source.starts()[i]),
+                    buildingId(shared, source.ends()[i]), source.costs()[i], source.capacities()[i]);
+        }
+        tracks = made;
+        columns = null;
+        columnOccupants = null;
+    }
 
-                            Edge forwardEdge = new Edge(dest, capacity);
-                            Edge reverseEdge = new Edge(source, 0);
+    private BuildingID buildingId(BuildingID[] shared, int raw) {
+        int index = Arrays.binarySearch(buildingIds, raw);
+        if (index < 0) {
+            return new BuildingID(raw); // track to a building that doesn't exist
+        }
+        if (shared[index] == null) {
+            shared[index] = new BuildingID(raw);
+        }
+        return shared[index];
+    }
 
-                            // assign the reverse graph edge attributes
-                            forwardEdge.resGraphEdge = reverseEdge;
-                            reverseEdge.resGraphEdge = forwardEdge;
+    // id of the track at this position, without making records
+    private TrackID trackId(int track) {
+        NetworkColumns source = columns;
+        return source != null ? new TrackID(source.trackIds()[track]) : tracks[track].id();
+    }
 
-                            // Ensure lists exist in the adjacency list
-                            adjList.putIfAbsent(source, new ArrayList<>());
-                            adjList.putIfAbsent(dest, new ArrayList<>());
+    // dense index for every building
+    private void indexBuildings() {
+        buildingIds = new int[buildingTable.size()];
+        int next = 0;
+        for (BuildingID id : buildingTable.keySet()) {
+            buildingIds[next++] = id.buildingID();
+        }
+        Arrays.sort(buildingIds);
+    }
 
-                            adjList.get(source).add(forwardEdge);
-                            adjList.get(dest).add(reverseEdge);
+    // Populate the CSR graph from the tracks, forgets any previous query
+    private void buildNetwork() {
+        int trackCount = tracks == null ? 0 : tracks.length;
+        int[] from = new int[trackCount];
+        int[] to = new int[trackCount];
+        int[] capacity = new int[trackCount];
+        for (int i = 0; i < trackCount; i++) {
+            from[i] = indexOf(tracks[i].startBuildingId());
+            to[i] = indexOf(tracks[i].endBuildingId());
+            capacity[i] = trackCapacity(tracks[i]);
+        }
+        useNetwork(FlowNetwork.build(buildingIds.length, from, to, capacity));
+    }
 
-                }
-            }
-           /* int capacity = Math.min(trackCapacity, Math.min(buildingTable.get(source).occupants(), buildingTable.get(dest).occupants()));
+    // freshly built network
+    private void useNetwork(FlowNetwork built) {
+        network = built;
+        residual = network.newResidual();
+        lastSource = -1;
+        lastSink = -1;
+        gomoryHuTree = null;
+        trackScores = null;
+    }
 
+    //bug fixed- was doing flow problem only with track capacities when it should be the min between track capacity
+    //and amount of people in each building
+    //yay it works now- I am sad this took me almost two hours
+    private int trackCapacity(Track track) {
+        Building source = buildingTable.get(track.startBuildingId());
+        Building dest = buildingTable.get(track.endBuildingId());
+        if (source == null || dest == null) {
+            return 0;
+        }
+        return Math.min(track.capacity(), Math.min(source.occupants(), dest.occupants()));
+    }
 
-            // Create forward and reverse edges
-            Edge forwardEdge = new Edge(dest, capacity);
-            Edge reverseEdge = new Edge(source, 0);
+    // dense index of a building, negative if it isn't in the system
+    int indexOf(BuildingID id) {
+        return Arrays.binarySearch(buildingIds, id.buildingID());
+    }
 
-            // assign the reverse graph edge attributes
-            forwardEdge.resGraphEdge = reverseEdge;
-            reverseEdge.resGraphEdge = forwardEdge;
+    // the frozen graph, shared read only with MaxPassengersService
+    FlowNetwork network() {
+        return network;
+    }
 
-            // Ensure lists exist in adjacency list
-            if(!adjList.containsKey(source)){
-                adjList.put(source, new ArrayList<>());
-            }
-            if(!adjList.containsKey(dest)){
-                adjList.put(dest, new ArrayList<>());
-            }
+    // maxPassengers with a choice of how tracks are read, UNDIRECTED_APPROXIMATION is meant for bulk
+    // all pairs capacity planning: n - 1 flow runs once and then every pair is a walk up the tree
+    int maxPassengers(BuildingID start, BuildingID end, FlowMode mode) {
+        if (mode == FlowMode.DIRECTED) {
+            return maxPassengers(start, end);
+        }
+        int source = indexOf(start);
+        int sink = indexOf(end);
+        if (source < 0 || sink < 0) {
+            return 0;
+        }
+        if (source == sink) {
+            return network.selfLoopCapacity(source);
+        }
+        return gomoryHuTree().minCut(source, sink);
+    }
 
-            adjList.get(source).add(forwardEdge);
-            adjList.get(dest).add(reverseEdge);*/
+    // lazily built flow equivalent tree of the undirected network
+    GomoryHuTree gomoryHuTree() {
+        if (gomoryHuTree == null) {
+            gomoryHuTree = GomoryHuTree.build(network.undirected(), flowEngine);
         }
+        return gomoryHuTree;
+    }
+
+    // swap the max flow engine used by maxPassengers
+    void setFlowEngine(FlowEngine flowEngine) {
+        this.flowEngine = flowEngine;
     }
 
     // Maximum number of passengers that can be transported from start to end (source to sink)
-    //https://www.geeksforgeeks.org/ford-fulkerson-algorithm-for-maximum-flow-problem/
-    //but instead of for loop looping backwards from source to sink I used while loops and a current tracker thing
+    //the actual flow algorithm lives in the FlowEngine (Dinic by default, Edmonds-Karp kept as reference)
+    //queries don't change the network anymore, asking the same thing twice gives the same answer
     int maxPassengers(BuildingID start, BuildingID end) {
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
         //check if the buildings even exist
-        if(!buildingTable.containsKey(start) || !buildingTable.containsKey(end)){
+        int source = indexOf(start);
+        int sink = indexOf(end);
+        if (source < 0 || sink < 0) {
+            metrics.maxPassengersAnswered(begin, false);
             return 0;
         }
-        // Validate start and end
-        if (!adjList.containsKey(start) || !adjList.containsKey(end)) {
-            return 0; // No path possible if start or end is missing
-        }
 
         //attempting pass testMaxPassengers9, i.e. there is a self loop
-        if (start.equals(end)) {
-            for (Edge edge : adjList.get(start)) {
-                if (edge.destination.equals(start)) {
-                    return edge.resCapacity;
-                }
-            }
-            return 0;
+        if (source == sink) {
+            metrics.maxPassengersAnswered(begin, false);
+            return network.selfLoopCapacity(source);
         }
 
+        // same question as last time, the residual buffer still holds (or was repaired to) its max flow
+        if (source == lastSource && sink == lastSink) {
+            metrics.maxPassengersAnswered(begin, true);
+            return lastFlow;
+        }
 
+        network.resetResidual(residual);
+        lastFlow = flowEngine.maxFlow(network, residual, source, sink);
+        lastSource = source;
+        lastSink = sink;
+        metrics.maxPassengersFlow(begin, flowEngine);
+        return lastFlow;
+    }
 
+    // ---- changing the network ----
+    // these keep the flow of the last maxPassengers query valid: capacity changes are repaired in place
+    // (IncrementalFlow) and adding/removing tracks carries every track's flow over to the rebuilt network,
+    // then one augmentation brings it back to a max flow. Not safe to call while a MaxPassengersService is querying
+
+    // new capacity for a track
+    void updateCapacity(TrackID id, int capacity) {
+        materialize();
+        int index = trackIndex(id);
+        Track track = tracks[index];
+        tracks = tracks.clone(); // never write into the caller's array
+        tracks[index] = new Track(track.id(), track.startBuildingId(), track.endBuildingId(), track.cost(), capacity);
+        changeCapacities(new int[]{index});
+    }
 
-        int maxFlow = 0;
-
-        // While there exists an augmenting path
-        while (true) {
-            HashMap<BuildingID, Edge> parent = new HashMap<>();
-            boolean hasPath = bfsAugment(start, end, parent);
+    // a building's occupants changed, every track touching it may change capacity
+    void updateOccupants(BuildingID id, int occupants) {
+        materialize();
+        boolean known = buildingTable.containsKey(id);
+        buildingTable.put(id, new Building(id, occupants));
+        if (!known) {
+            // new node, tracks that used to be skipped might be usable now
+            indexBuildings();
+            buildNetwork();
+            return;
+        }
 
-            // no augmenting path?
-            if (!hasPath) break;
+        int u = indexOf(id);
+        int[] touching = new int[network.offsets[u + 1] - network.offsets[u]];
+        for (int edge = network.offsets[u]; edge < network.offsets[u + 1]; edge++) {
+            touching[edge - network.offsets[u]] = network.edgeTrack[edge];
+        }
+        changeCapacities(touching);
+    }
 
-            // Find the bottleneck capacity
-            int pathFlow = Integer.MAX_VALUE;
-            BuildingID current = end; //start from sink
-            while (!current.equals(start)) {
-                Edge edge = parent.get(current);
-                pathFlow = Math.min(pathFlow, edge.resCapacity);
-                current = edge.resGraphEdge.destination;
+    // track closed for good
+    void removeTrack(TrackID id) {
+        materialize();
+        int index = trackIndex(id);
+
+        // drain it first so every other track's flow stays valid, then drop it from the network
+        Track track = tracks[index];
+        tracks = tracks.clone();
+        tracks[index] = new Track(track.id(), track.startBuildingId(), track.endBuildingId(), track.cost(), 0);
+        changeCapacities(new int[]{index});
+
+        Track[] remaining = new Track[tracks.length - 1];
+        int[] oldIndex = new int[remaining.length];
+        for (int i = 0, j = 0; i < tracks.length; i++) {
+            if (i != index) {
+                remaining[j] = tracks[i];
+                oldIndex[j++] = i;
             }
+        }
+        rebuildKeepingFlow(remaining, oldIndex);
+    }
+
+    // new track
+    void addTrack(Track track) {
+        materialize();
+        int count = tracks == null ? 0 : tracks.length;
+        Track[] more = new Track[count + 1];
+        int[] oldIndex = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            more[i] = tracks[i];
+            oldIndex[i] = i;
+        }
+        more[count] = track;
+        oldIndex[count] = -1;
+        rebuildKeepingFlow(more, oldIndex);
+    }
 
-            // Update residual capacities along the path
-            current = end;
-            while (!current.equals(start)) {
-                Edge edge = parent.get(current);
-                edge.resCapacity -= pathFlow;
-                edge.resGraphEdge.resCapacity += pathFlow;
-                current = edge.resGraphEdge.destination;
+    // first track with this id (linear, every change copies O(tracks) anyway)
+    private int trackIndex(TrackID id) {
+        if (tracks != null) {
+            for (int i = 0; i < tracks.length; i++) {
+                if (tracks[i].id().equals(id)) {
+                    return i;
+                }
             }
+        }
+        throw new IllegalArgumentException("no track with id " + id);
+    }
 
-            // adding to maxflow
-            maxFlow += pathFlow;
+    // recompute the capacity of these tracks (copy on write network) and repair the last flow
+    private void changeCapacities(int[] changedTracks) {
+        int[] capacity = network.capacity.clone();
+        FlowNetwork updated = network.withCapacities(capacity);
+        if (lastSource >= 0) {
+            repair.returnExcess(network, residual, lastSource, lastSink);
         }
 
-        return maxFlow;
-    }
+        for (int track : changedTracks) {
+            int edge = network.trackEdge[track];
+            if (edge < 0) {
+                continue;
+            }
+            int oldCapacity = capacity[edge];
+            capacity[edge] = trackCapacity(tracks[track]);
+            if (lastSource >= 0 && oldCapacity != capacity[edge]) {
+                lastFlow -= repair.capacityChanged(updated, residual, edge, oldCapacity, lastSource, lastSink);
+            }
+        }
 
-    // BFS to find an augmenting path
-    //https://www.geeksforgeeks.org/ford-fulkerson-algorithm-for-maximum-flow-problem/
-    private boolean bfsAugment(BuildingID start, BuildingID end, HashMap<BuildingID, Edge> parent) {
-        Queue<BuildingID> queue = new LinkedList<>();
-        Set<BuildingID> visited = new HashSet<>();
-        queue.add(start);
-        visited.add(start);
+        network = updated;
+        gomoryHuTree = null;
+        trackScores = null;
+        if (lastSource >= 0) {
+            lastFlow += flowEngine.maxFlow(network, residual, lastSource, lastSink);
+        }
+    }
 
-        while (!queue.isEmpty()) {
-            BuildingID u = queue.poll();
-            for (Edge edge : adjList.get(u)) {
-                // node not visited and has residual capacity
-                if (!visited.contains(edge.destination) && edge.resCapacity > 0) {
+    // new topology: build the network again and put every surviving track's flow back on it
+    // oldIndex[i] is where newTracks[i] used to be, -1 for a brand new track
+    private void rebuildKeepingFlow(Track[] newTracks, int[] oldIndex) {
+        FlowNetwork oldNetwork = network;
+        int[] oldResidual = residual;
+        int source = lastSource;
+        int sink = lastSink;
+        int flow = lastFlow;
+        if (source >= 0) {
+            repair.returnExcess(oldNetwork, oldResidual, source, sink);
+        }
 
-                    // return true, we got to the sink
-                    if (edge.destination.equals(end)) {
-                        parent.put(edge.destination, edge);
-                        return true;
-                    }
+        tracks = newTracks;
+        buildNetwork();
+        if (source < 0) {
+            return;
+        }
 
-                    queue.add(edge.destination);
-                    parent.put(edge.destination, edge);
-                    visited.add(edge.destination);
-                }
+        for (int i = 0; i < newTracks.length; i++) {
+            int edge = network.trackEdge[i];
+            if (edge < 0 || oldIndex[i] < 0 || oldNetwork.trackEdge[oldIndex[i]] < 0) {
+                continue;
             }
+            int carried = oldNetwork.flow(oldResidual, oldNetwork.trackEdge[oldIndex[i]]);
+            residual[edge] -= carried;
+            residual[network.reverse[edge]] += carried;
         }
-
-        // No path found
-        return false;
+        lastSource = source;
+        lastSink = sink;
+        lastFlow = flow + flowEngine.maxFlow(network, residual, source, sink);
     }
 
 
 
 
+    // for every trip, whether the two buildings are linked by tracks at all (any direction, any capacity)
+    // the components are built with parallel unions on a lock free union-find and the trips answered in parallel
+    boolean[] connected(List<Trip> trips) {
+        FlowNetwork graph = network;
+        ConcurrentDisjointSet sets = new ConcurrentDisjointSet(graph.nodeCount);
+        IntStream.range(0, graph.trackEdge.length).parallel().forEach(track -> {
+            int edge = graph.trackEdge[track];
+            if (edge >= 0) {
+                sets.union(graph.tail(edge), graph.heads[edge]);
+            }
+        });
+
+        boolean[] result = new boolean[trips.size()];
+        IntStream.range(0, trips.size()).parallel().forEach(i -> {
+            int a = indexOf(trips.get(i).start());
+            int b = indexOf(trips.get(i).end());
+            result[i] = a >= 0 && b >= 0 && sets.connected(a, b);
+        });
+        return result;
+    }
+
     // Returns a list of trackIDs that connect to every building maximizing total network capacity taking cost into account
     TrackID[] bestMetroSystem() {
-        // TODO: your implementation here
         //this was a pain
-        PriorityQueue<Track> pq = new PriorityQueue<>(
-                new Comparator<Track>() { //https://www.geeksforgeeks.org/priority-queue-in-reverse-order-in-java/
-                    public int compare(Track a, Track b) {
-                        double goodnessA = howGoodTrack(a);
-                        double goodnessB = howGoodTrack(b);
-
-                        // Sorting in descending order
-                        if (goodnessA < goodnessB){
-                            return 1;
-                        }
-                        if (goodnessA > goodnessB) {
-                            return -1;
-                        }
-                        return 0; // They are equal
-                    }
-                }
-        );
+        //used to be a PriorityQueue refilled on every call, the sorted order now lives in TrackScoreIndex
+        //(exact capacity/cost fractions, ties by lower track id) and is only rebuilt after tracks or occupants change
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
+        TrackScoreIndex index = trackScores(null);
 
-        for (Track track : tracks) {
-            pq.add(track);
-        }
-
-        //adding each building
-        NaiveDisjointSet<BuildingID> makeSet = new NaiveDisjointSet<>();
-        for (BuildingID buildingID : buildingTable.keySet()) {
-            makeSet.add(buildingID);
-        }
+        //adding each building, by dense index (int[] based union-find, see IntDisjointSet)
+        IntDisjointSet makeSet = new IntDisjointSet(buildingIds.length);
 
         //https://en.wikipedia.org/wiki/Kruskal%27s_algorithm
 
         ArrayList<TrackID> best = new ArrayList<>();
+        int examined = 0;
 
-        while (!pq.isEmpty() && best.size() < buildingTable.size() - 1) {
-            Track curr = pq.poll();
-           // System.out.println("Processing Track ID: " + curr.id() + ", Goodness: " + howGoodTrack(curr));
-
-
-
-            // Check if adding this track forms a cycle
-            if (!makeSet.find(curr.startBuildingId()).equals(makeSet.find(curr.endBuildingId()))) {
-                // Add the track to the result
-              //  System.out.println("Adding Track ID: " + curr.id() + " to the MST");
-                best.add(curr.id());
+        for (int track : index.order) {
+            if (best.size() >= buildingIds.length - 1) {
+                break;
+            }
+            int edge = network.trackEdge[track];
+            if (edge < 0) {
+                continue; // track to a building that doesn't exist
+            }
 
-                makeSet.union(curr.startBuildingId(), curr.endBuildingId());
+            // Check if adding this track forms a cycle, union only merges if it doesn't
+            examined++;
+            if (makeSet.union(network.tail(edge), network.heads[edge])) {
+                best.add(trackId(track));
             }
         }
+        metrics.bestMetroSystem(begin, examined, examined - best.size());
 
         int size = best.size();
 
@@ -263,65 +474,212 @@ public class McMetro {
         }
 
         return actualBest;
+    }
 
-        //return new TrackID[0];
+    // same result as bestMetroSystem() but computed with parallel cycle filtering (FilterKruskal) on the given pool,
+    // for networks with millions of candidate tracks. The first call sorts the score index on the pool too
+    TrackID[] bestMetroSystem(ForkJoinPool pool) {
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
+        FlowNetwork graph = network;
+        TrackScoreIndex index = trackScores(pool);
+        int trackCount = index.order.length;
+        int[] from = new int[trackCount];
+        int[] to = new int[trackCount];
+        pool.submit(() -> IntStream.range(0, trackCount).parallel().forEach(i -> {
+            int edge = graph.trackEdge[i];
+            from[i] = edge < 0 ? -1 : graph.tail(edge);
+            to[i] = edge < 0 ? -1 : graph.heads[edge];
+        })).join();
+
+        FilterKruskal forest = FilterKruskal.spanningForest(graph.nodeCount, from, to, index.order, pool);
+        int[] chosen = forest.chosen();
+        TrackID[] best = new TrackID[chosen.length];
+        for (int i = 0; i < chosen.length; i++) {
+            best[i] = trackId(chosen[i]);
+        }
+        metrics.bestMetroSystem(begin, forest.examined(), forest.skipped());
+        return best;
     }
 
+    // cached score index, pool can be null to sort on this thread
+    private TrackScoreIndex trackScores(ForkJoinPool pool) {
+        if (trackScores == null) {
+            NetworkColumns source = columns;
+            trackScores = source != null
+                    ? TrackScoreIndex.build(network, source.costs(), source.trackIds(), pool)
+                    : TrackScoreIndex.build(network, tracks, pool);
+        }
+        return trackScores;
+    }
+
+    // old truncating score, bestMetroSystem compares the exact fractions now (TrackScoreIndex)
+    // read only, so a McMetro built from columns reads the occupants from the columns and stays without records
     int howGoodTrack(Track track){
+        if (columnOccupants != null) {
+            int minCapacity = Math.min(track.capacity(), Math.min(columnOccupants(track.startBuildingId()), columnOccupants(track.endBuildingId())));
+            return minCapacity/track.cost();
+        }
         int minCapacity =  Math.min(track.capacity(), Math.min(buildingTable.get(track.startBuildingId()).occupants(), buildingTable.get(track.endBuildingId()).occupants()));
         return minCapacity/track.cost();
     }
 
+    // same NullPointerException as buildingTable.get(id).occupants() for a building that doesn't exist
+    private int columnOccupants(BuildingID id) {
+        int index = Arrays.binarySearch(buildingIds, id.buildingID());
+        if (index < 0) {
+            throw new NullPointerException("no building " + id);
+        }
+        return columnOccupants[index];
+    }
+
 
 
     // Adds a passenger to the system
-    //https://www.geeksforgeeks.org/trie-memory-optimization-using-hash-map/
     //initially was coding with static because it was easier to test
      void addPassenger(String name) {
-        String nameToAdd = name.toLowerCase();
-        TrieNode current = root;
+        passengers.add(name.toLowerCase());
+    }
 
-        for (char c : nameToAdd.toCharArray()) {
-            if(!current.map.containsKey(c)){
-                current.map.put(c, new TrieNode());
-            }
-            current = current.map.get(c);
+    // nightly roster loads: names sorted by their lower case form (plain String order), duplicates are fine.
+    // an empty radix trie is built bottom up in one pass (RadixPassengerTrie.addSorted), otherwise names are
+    // added one by one. IllegalArgumentException at the first name out of order, the ones before it stay added
+    PassengerLoadStats loadPassengers(Stream<String> sortedNames) {
+        long start = System.nanoTime();
+        int added = passengers.addSorted(sortedNames.map(String::toLowerCase).iterator()); // no copy if already lower case
+        return new PassengerLoadStats(added, System.nanoTime() - start);
+    }
+
+    // same from a UTF-8 file with one name per line
+    PassengerLoadStats loadPassengers(Path sortedNameFile) throws IOException {
+        try (Stream<String> lines = Files.lines(sortedNameFile)) {
+            return loadPassengers(lines);
         }
-        current.isEndOfWord = true;
-        allPassengers.add(capital(name));
+    }
+
+    // writes the passenger trie to a flat binary file that openPassengers can map back in (MappedPassengerTrie)
+    void savePassengers(Path file) throws IOException {
+        if (passengers instanceof RadixTrieReader) {
+            MappedPassengerTrie.write((RadixTrieReader) passengers, file);
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        passengers.collect("", names);
+        Collections.sort(names);
+        RadixPassengerTrie copy = new RadixPassengerTrie();
+        copy.addSorted(names.iterator());
+        MappedPassengerTrie.write(copy, file);
+    }
+
+    // serves searches straight from a file written by savePassengers, nothing is replayed on startup
+    // the mapped index is read only: adding or removing passengers throws UnsupportedOperationException
+    // until setPassengerIndex(new RadixPassengerTrie()) copies it back on heap
+    void openPassengers(Path file) throws IOException {
+        passengers = MappedPassengerTrie.open(file);
+    }
+
+    // takes a passenger out again, false if they weren't in the system
+    boolean removePassenger(String name) {
+        return passengers.remove(name.toLowerCase());
+    }
+
+    // how many passengers' names start with firstLetters, without listing them (trie nodes count their names)
+    int countPassengers(String firstLetters) {
+        return passengers.count(firstLetters.toLowerCase());
+    }
+
+    // the rank-th (from 0) passenger starting with firstLetters, in the same order as the paged search
+    String passengerAt(String firstLetters, int rank) {
+        String name = passengers.nameAt(firstLetters.toLowerCase(), rank);
+        if (name == null) {
+            throw new IndexOutOfBoundsException("no passenger " + rank + " starting with " + firstLetters
+                    + ", there are " + countPassengers(firstLetters));
+        }
+        return capital(name);
     }
 
     // Method to search for passengers by prefix
   ArrayList<String> searchForPassengers(String firstLetters) {
-        String allLowerCase = firstLetters.toLowerCase();
-        TrieNode current = root;
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
         ArrayList<String> results = new ArrayList<>();
-
-        for (char c : allLowerCase.toCharArray()) {
-            if (!current.map.containsKey(c)) {
-                return results; // If prefix not found, return an empty list
-            }
-            current = current.map.get(c);
+        passengers.collect(firstLetters.toLowerCase(), results); // empty if prefix not found
+        metrics.passengerSearch(begin, firstLetters, results);
+        for (int i = 0; i < results.size(); i++) {
+            results.set(i, capital(results.get(i)));
         }
 
-        traverseTrie(current, firstLetters, results);
-
         //sorting alphabetically
         Collections.sort(results); //https://stackoverflow.com/questions/708698/how-can-i-sort-a-list-alphabetically
         return results;
     }
 
-    // helper method
-    //https://github.com/chenleishen/PrefixMatcher/blob/master/PrefixMatcher.java
-    private void traverseTrie(TrieNode node, String prefix, List<String> results) {
-        if (node.isEndOfWord) {
-            results.add(capital(prefix));
+    // typo tolerant search: passengers whose name is within maxEdits insertions, deletions or substitutions of
+    // name, or with asPrefix whose name starts with something that close to what was typed so far.
+    // only branches that can still be close enough get walked, see EditDistance
+    ArrayList<String> searchForPassengersFuzzy(String name, int maxEdits, boolean asPrefix) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("maxEdits can't be negative, got " + maxEdits);
+        }
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
+        ArrayList<String> results = new ArrayList<>();
+        passengers.collectSimilar(name.toLowerCase(), maxEdits, asPrefix, results);
+        metrics.fuzzyPassengerSearch(begin, results);
+        for (int i = 0; i < results.size(); i++) {
+            results.set(i, capital(results.get(i)));
         }
-        for (Map.Entry<Character, TrieNode> mapElement : node.map.entrySet()) { //https://www.geeksforgeeks.org/traverse-through-a-hashmap-in-java/
-            char next = mapElement.getKey();
-            TrieNode child = mapElement.getValue();
-            traverseTrie(child, prefix + next, results);
+        Collections.sort(results);
+        return results;
+    }
+
+    // one page of the same search without collecting and sorting every match: at most limit names, then pass
+    // page.nextCursor() back in for the next page (cursor null = first page). Names come straight out of the trie
+    // in lower case char order, which is the order above as long as the prefix isn't empty
+    PassengerPage searchForPassengers(String firstLetters, int limit, String cursor) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit has to be positive, got " + limit);
+        }
+        MetroMetrics metrics = this.metrics;
+        long begin = metrics.begin();
+        ArrayList<String> names = new ArrayList<>(Math.min(limit, 1024) + 1);
+        passengers.collect(firstLetters.toLowerCase(), cursor, limit + 1, names); // one extra to know if there's more
+        String nextCursor = null;
+        if (names.size() > limit) {
+            names.remove(limit);
+            nextCursor = names.get(limit - 1);
+        }
+        metrics.passengerSearch(begin, firstLetters, names);
+        for (int i = 0; i < names.size(); i++) {
+            names.set(i, capital(names.get(i)));
+        }
+        return new PassengerPage(names, nextCursor);
+    }
+
+    // turns metrics on (new MetroMetrics()) or back off (MetroMetrics.DISABLED), one MetroMetrics can be
+    // shared by several McMetros and MaxPassengersServices to add them all up
+    void setMetrics(MetroMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    MetroMetrics metrics() {
+        return metrics;
+    }
+
+    // swaps the trie implementation (HashPassengerTrie is the original one), names already added are moved over
+    // ConcurrentPassengerTrie makes the passenger methods safe to call from many threads (searches never block)
+    void setPassengerIndex(PassengerIndex index) {
+        ArrayList<String> names = new ArrayList<>();
+        passengers.collect("", names);
+        for (String name : names) {
+            index.add(name);
         }
+        passengers = index;
+    }
+
+    // for the memory per name numbers
+    PassengerIndex passengerIndex() {
+        return passengers;
     }
 
     //making it a capital letter again
@@ -342,10 +700,166 @@ public class McMetro {
 
 
 
+    // the other question: how many checkers so that every shift is staffed, and who works which one
+    // (interval partitioning). Shifts go in start order to the checker that has been free the longest,
+    // or to a new checker if nobody is free yet. A checker is free again at the end of their shift, so touching
+    // shifts can go to the same person like above. The number of checkers is the most shifts running at once.
+    // busy checkers sit in a LongHeap as (end << 32 | checker), so nothing is allocated per shift
+    //https://en.wikipedia.org/wiki/Interval_scheduling#Interval_partitioning
+    static CheckerAssignment assignTicketCheckers(int[] starts, int[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException(starts.length + " starts but " + ends.length + " ends");
+        }
+        int n = starts.length;
+        // (start, zero length first, index): a zero length shift can go right before a shift starting at
+        // the same time, the other way round it can't
+        long[] byStart = new long[n];
+        for (int i = 0; i < n; i++) {
+            byStart[i] = ((long) starts[i] << 32) | (ends[i] > starts[i] ? 1L << 31 : 0) | i;
+        }
+        if (n >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(byStart);
+        } else {
+            Arrays.sort(byStart);
+        }
+
+        int[] checkerOf = new int[n];
+        int checkers = 0;
+        LongHeap busy = new LongHeap(64);
+        for (long entry : byStart) {
+            int shift = (int) entry & Integer.MAX_VALUE;
+            int checker;
+            if (busy.size() > 0 && (int) (busy.peek() >> 32) <= starts[shift]) {
+                checker = (int) busy.peek();
+                busy.replaceTop(((long) ends[shift] << 32) | checker);
+            } else {
+                checker = checkers++;
+                busy.push(((long) ends[shift] << 32) | checker);
+            }
+            checkerOf[shift] = checker;
+        }
+
+        // group the shifts by checker, still in start order
+        int[] offsets = new int[checkers + 1];
+        for (int shift = 0; shift < n; shift++) {
+            offsets[checkerOf[shift] + 1]++;
+        }
+        for (int c = 0; c < checkers; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] next = Arrays.copyOf(offsets, checkers);
+        int[] shifts = new int[n];
+        for (long entry : byStart) {
+            int shift = (int) entry & Integer.MAX_VALUE;
+            shifts[next[checkerOf[shift]]++] = shift;
+        }
+        return new CheckerAssignment(checkers, checkerOf, offsets, shifts);
+    }
+
+    // same for {start, end} rows, the rows aren't touched
+    static CheckerAssignment assignTicketCheckers(int[][] schedule) {
+        int[] starts = new int[schedule.length];
+        int[] ends = new int[schedule.length];
+        for (int i = 0; i < schedule.length; i++) {
+            starts[i] = schedule[i][0];
+            ends[i] = schedule[i][1];
+        }
+        return assignTicketCheckers(starts, ends);
+    }
+
+    // the greedy below for shifts given as parallel arrays, which are left alone: every shift is packed into one
+    // long (TicketCheckerScheduler.pack) and a private copy is sorted with the primitive sort, in parallel once
+    // there are enough shifts. No int[] per shift, no Comparator
+    // NOT always the same answer as below: this sorts equal ends by start, the int[][] one keeps input order, so
+    // a zero length shift that comes before a longer shift ending with it is counted here but not there
+    // ({5,5},{3,5}: 2 here, 1 below). 2 is right, the zero length shift fits after the other one
+    static int hireTicketCheckers(int[] starts, int[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException(starts.length + " starts but " + ends.length + " ends");
+        }
+        long[] shifts = new long[starts.length];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = TicketCheckerScheduler.pack(starts[i], ends[i]);
+        }
+        if (shifts.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(shifts);
+        } else {
+            Arrays.sort(shifts);
+        }
+
+        int count = 0;
+        int end = Integer.MIN_VALUE;
+        for (long shift : shifts) {
+            if (end <= TicketCheckerScheduler.start(shift)) {
+                end = TicketCheckerScheduler.end(shift);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // weighted version: shifts are worth different amounts (peak vs off peak), the best total value of shifts one
+    // checker can work without overlaps (touching is fine). Greedy doesn't work any more so it's the usual DP over
+    // shifts in end order: best[k + 1] = max(best[k], weight + best[shifts ending by this one's start])
+    // the shifts are sorted as packed (end, zero length last, index) longs and the predecessor is a binary search
+    // on that same array, so it's two longs per shift on top of the input and no objects
+    // zero length shifts go last among equal ends so they can follow the others ending there
+    // negative weights are never worth taking
+    //https://en.wikipedia.org/wiki/Interval_scheduling#Weighted
+    static long hireWeightedTicketCheckers(int[] starts, int[] ends, int[] weights) {
+        if (starts.length != ends.length || starts.length != weights.length) {
+            throw new IllegalArgumentException(starts.length + " starts, " + ends.length + " ends and "
+                    + weights.length + " weights");
+        }
+        int n = starts.length;
+        long[] byEnd = new long[n];
+        for (int i = 0; i < n; i++) {
+            byEnd[i] = ((long) ends[i] << 32) | (ends[i] > starts[i] ? 0 : 1L << 31) | i;
+        }
+        if (n >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(byEnd);
+        } else {
+            Arrays.sort(byEnd);
+        }
+
+        long[] best = new long[n + 1]; // best[k] = best value using the first k shifts in end order
+        for (int k = 0; k < n; k++) {
+            int shift = (int) byEnd[k] & Integer.MAX_VALUE;
+            // how many of the earlier shifts end by this one's start
+            int start = starts[shift];
+            int low = 0;
+            int high = k;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if ((int) (byEnd[middle] >> 32) <= start) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            best[k + 1] = Math.max(best[k], weights[shift] + best[low]);
+        }
+        return best[n];
+    }
+
+    // schedule rows are {start, end, weight}
+    static long hireWeightedTicketCheckers(int[][] schedule) {
+        int[] starts = new int[schedule.length];
+        int[] ends = new int[schedule.length];
+        int[] weights = new int[schedule.length];
+        for (int i = 0; i < schedule.length; i++) {
+            starts[i] = schedule[i][0];
+            ends[i] = schedule[i][1];
+            weights[i] = schedule[i][2];
+        }
+        return hireWeightedTicketCheckers(starts, ends, weights);
+    }
+
     // Return how many ticket checkers will be hired
     //easy interval scheduling (not weighted so can use greedy thank god)
     //https://www.geeksforgeeks.org/how-to-implement-interval-scheduling-algorithm-in-python/
     //reread instructions apparently we can have negative times
+    //shifts coming in as a feed: TicketCheckerScheduler
     static int hireTicketCheckers(int[][] schedule) {
         // TODO: your implementation here
 
@@ -1,7 +1,18 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -137,6 +148,1324 @@ class NaiveDisjointSetTest {
     }
 }
 
+class IntDisjointSetTest {
+
+    @Test
+    void testUnionAndFind() {
+        IntDisjointSet ds = new IntDisjointSet(4);
+
+        assertTrue(ds.union(0, 1));
+        assertFalse(ds.union(1, 0)); // already together
+
+        assertEquals(ds.find(0), ds.find(1));
+        assertNotEquals(ds.find(0), ds.find(2));
+        assertEquals(3, ds.setCount());
+    }
+
+    @Test
+    void testLongChain() {
+        // a million element chain in one set. Only a scale check: union by size (union by rank in
+        // NaiveDisjointSet) keeps trees under log2 n deep, so no union order makes find go deep
+        int n = 1_000_000;
+        IntDisjointSet ds = new IntDisjointSet(n);
+        for (int i = 0; i + 1 < n; i++) {
+            ds.union(i + 1, i);
+        }
+        assertEquals(1, ds.setCount());
+        assertEquals(ds.find(0), ds.find(n - 1));
+    }
+
+    @Test
+    void testAddGrows() {
+        IntDisjointSet ds = new IntDisjointSet(0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, ds.add());
+        }
+        ds.union(3, 97);
+        assertTrue(ds.connected(3, 97));
+        assertEquals(100, ds.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> ds.find(100));
+    }
+
+    @Test
+    void testIndexedAdapterMatchesNaive() {
+        // random unions on both, connectivity has to agree
+        Random random = new Random(5);
+        NaiveDisjointSet<String> naive = new NaiveDisjointSet<>();
+        IndexedDisjointSet<String> indexed = new IndexedDisjointSet<>();
+        for (int i = 0; i < 200; i++) {
+            naive.add("s" + i);
+            indexed.add("s" + i);
+        }
+        for (int i = 0; i < 150; i++) {
+            String a = "s" + random.nextInt(200);
+            String b = "s" + random.nextInt(200);
+            naive.union(a, b);
+            indexed.union(a, b);
+        }
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 200; j += 7) {
+                assertEquals(naive.find("s" + i).equals(naive.find("s" + j)),
+                        indexed.find("s" + i).equals(indexed.find("s" + j)));
+            }
+        }
+    }
+
+    @Test
+    void testIndexedFindOnUnaddedElement() {
+        IndexedDisjointSet<Integer> ds = new IndexedDisjointSet<>();
+
+        // same as NaiveDisjointSet, unadded elements throw
+        assertThrows(NullPointerException.class, () -> ds.find(1));
+        assertThrows(NullPointerException.class, () -> ds.union(1, 2));
+    }
+}
+
+class ConcurrentDisjointSetTest {
+
+    @Test
+    void testUnionAndFind() {
+        ConcurrentDisjointSet ds = new ConcurrentDisjointSet(4);
+
+        assertTrue(ds.union(0, 1));
+        assertFalse(ds.union(1, 0));
+
+        assertEquals(ds.find(0), ds.find(1));
+        assertTrue(ds.connected(0, 1));
+        assertFalse(ds.connected(0, 2));
+    }
+
+    @Test
+    void testLongChain() {
+        int n = 1_000_000;
+        ConcurrentDisjointSet ds = new ConcurrentDisjointSet(n);
+        for (int i = 0; i + 1 < n; i++) {
+            ds.union(i, i + 1);
+        }
+        assertEquals(ds.find(0), ds.find(n - 1));
+    }
+
+    @Test
+    void testStressUnderContention() throws Exception {
+        // 8 threads union random pairs (plus finds in between) on the same set, the final partition
+        // has to be the same as doing every union on one thread
+        int n = 100_000;
+        int threads = 8;
+        int perThread = 40_000;
+        int[][] pairs = new int[threads * perThread][2];
+        Random random = new Random(8);
+        for (int[] pair : pairs) {
+            pair[0] = random.nextInt(n);
+            pair[1] = random.nextInt(n);
+        }
+
+        ConcurrentDisjointSet concurrent = new ConcurrentDisjointSet(n);
+        AtomicInteger merges = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            workers[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; i < first + perThread; i++) {
+                    if (concurrent.union(pairs[i][0], pairs[i][1])) {
+                        merges.incrementAndGet();
+                    }
+                    concurrent.find(pairs[(i * 31) % pairs.length][1]);
+                }
+            });
+            workers[t].start();
+        }
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        IntDisjointSet sequential = new IntDisjointSet(n);
+        for (int[] pair : pairs) {
+            sequential.union(pair[0], pair[1]);
+        }
+
+        // every successful union merged two sets exactly once
+        assertEquals(n - sequential.setCount(), merges.get());
+        for (int i = 0; i < n; i++) {
+            int j = (int) ((i * 7919L) % n);
+            assertEquals(sequential.connected(i, j), concurrent.connected(i, j));
+        }
+    }
+
+    @Test
+    void testConnectedTrips() {
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        BuildingID bid3 = new BuildingID(3);
+        BuildingID bid4 = new BuildingID(4);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 100),
+                new Building(bid2, 100),
+                new Building(bid3, 100),
+                new Building(bid4, 100)
+        };
+        Track[] tracks = new Track[]{
+                new Track(new TrackID(1), bid1, bid2, 1, 10),
+                new Track(new TrackID(2), bid3, bid2, 1, 0) // no capacity but still links them
+        };
+
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        boolean[] connected = mcMetro.connected(List.of(
+                new Trip(bid1, bid3), new Trip(bid3, bid1), new Trip(bid1, bid4), new Trip(bid4, bid4),
+                new Trip(bid1, new BuildingID(9))));
+        assertArrayEquals(new boolean[]{true, true, false, true, false}, connected);
+    }
+}
+
+class PassengerIndexTest {
+
+    // random lower case names over a small alphabet so there are lots of shared prefixes and splits
+    static List<String> randomNames(Random random, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                name.append((char) ('a' + random.nextInt(4)));
+            }
+            names.add(name.toString());
+        }
+        return names;
+    }
+
+    static List<String> sorted(PassengerIndex index, String prefix) {
+        List<String> found = new ArrayList<>();
+        index.collect(prefix, found);
+        found.sort(null);
+        return found;
+    }
+
+    @Test
+    void testRadixSplitsLabels() {
+        PassengerIndex trie = new RadixPassengerTrie();
+        trie.add("alexander");
+        trie.add("alex");    // splits alexander's label
+        trie.add("alfred");  // splits it again
+        trie.add("alex");    // duplicate
+        assertEquals(3, trie.size());
+        assertEquals(List.of("alex", "alexander", "alfred"), sorted(trie, "al"));
+        assertEquals(List.of("alex", "alexander"), sorted(trie, "alex"));
+        assertEquals(List.of("alexander"), sorted(trie, "alexan")); // prefix ends inside a label
+        assertEquals(List.of(), sorted(trie, "alexb"));
+        assertEquals(List.of(), sorted(trie, "b"));
+    }
+
+    @Test
+    void testRadixVisitsInOrder() {
+        PassengerIndex trie = new RadixPassengerTrie();
+        for (String name : new String[]{"dave", "bob", "carl", "bobby", "al", "alex"}) {
+            trie.add(name);
+        }
+        List<String> found = new ArrayList<>();
+        trie.collect("", found);
+        assertEquals(List.of("al", "alex", "bob", "bobby", "carl", "dave"), found); // no sort needed
+    }
+
+    @Test
+    void testRadixMatchesHashTrie() {
+        Random random = new Random(11);
+        PassengerIndex hash = new HashPassengerTrie();
+        PassengerIndex radix = new RadixPassengerTrie();
+        for (String name : randomNames(random, 5000)) {
+            hash.add(name);
+            radix.add(name);
+        }
+        assertEquals(hash.size(), radix.size());
+        for (String prefix : randomNames(random, 300)) {
+            assertEquals(sorted(hash, prefix), sorted(radix, prefix));
+        }
+        assertEquals(sorted(hash, ""), sorted(radix, ""));
+    }
+
+    @Test
+    void testRadixPagesMatchFallback() {
+        // the radix trie walks pages itself, the hash trie goes through the collect-and-sort default
+        Random random = new Random(13);
+        PassengerIndex hash = new HashPassengerTrie();
+        PassengerIndex radix = new RadixPassengerTrie();
+        for (String name : randomNames(random, 3000)) {
+            hash.add(name);
+            radix.add(name);
+        }
+        for (String prefix : new String[]{"", "a", "ab", "cdc", "dddd", "x"}) {
+            for (int limit : new int[]{1, 7, 100}) {
+                List<String> all = new ArrayList<>();
+                String after = null;
+                while (true) {
+                    List<String> fromHash = new ArrayList<>();
+                    List<String> fromRadix = new ArrayList<>();
+                    hash.collect(prefix, after, limit, fromHash);
+                    radix.collect(prefix, after, limit, fromRadix);
+                    assertEquals(fromHash, fromRadix);
+                    all.addAll(fromRadix);
+                    if (fromRadix.size() < limit) {
+                        break;
+                    }
+                    after = fromRadix.get(fromRadix.size() - 1);
+                }
+                assertEquals(sorted(hash, prefix), all);
+            }
+        }
+        // a cursor that isn't a stored name still works
+        List<String> page = new ArrayList<>();
+        radix.collect("a", "abz", 3, page);
+        List<String> expected = new ArrayList<>();
+        for (String name : sorted(hash, "a")) {
+            if (name.compareTo("abz") > 0 && expected.size() < 3) {
+                expected.add(name);
+            }
+        }
+        assertEquals(expected, page);
+    }
+
+    @Test
+    void testCountsAndRanksAfterAddsAndRemoves() {
+        Random random = new Random(14);
+        PassengerIndex hash = new HashPassengerTrie();
+        PassengerIndex radix = new RadixPassengerTrie();
+        List<String> names = randomNames(random, 4000);
+        for (int round = 0; round < 3; round++) {
+            for (String name : names.subList(0, 2000 + round * 1000)) {
+                hash.add(name);
+                radix.add(name);
+            }
+            for (String name : randomNames(random, 1500)) {
+                assertEquals(hash.remove(name), radix.remove(name));
+            }
+            assertEquals(hash.size(), radix.size());
+
+            for (String prefix : new String[]{"", "a", "b", "cd", "dab", "abcd", "x"}) {
+                List<String> expected = sorted(hash, prefix);
+                assertEquals(expected, sorted(radix, prefix));
+                assertEquals(expected.size(), radix.count(prefix));
+                for (int rank = 0; rank < expected.size(); rank += 1 + expected.size() / 50) {
+                    assertEquals(expected.get(rank), radix.nameAt(prefix, rank));
+                    assertEquals(expected.get(rank), hash.nameAt(prefix, rank));
+                }
+                assertNull(radix.nameAt(prefix, expected.size()));
+                assertNull(radix.nameAt(prefix, -1));
+            }
+        }
+    }
+
+    @Test
+    void testRemoveCutsEmptyBranches() {
+        for (PassengerIndex trie : new PassengerIndex[]{new HashPassengerTrie(), new RadixPassengerTrie()}) {
+            trie.add("alex");
+            trie.add("alexander");
+            trie.add("alfred");
+            assertFalse(trie.remove("ale"));       // only a prefix
+            assertFalse(trie.remove("alexandra")); // never added
+            assertTrue(trie.remove("alexander"));
+            assertFalse(trie.remove("alexander"));
+            assertEquals(List.of("alex", "alfred"), sorted(trie, "al"));
+            assertEquals(List.of(), sorted(trie, "alexa"));
+            assertEquals(0, trie.count("alexa"));
+            assertTrue(trie.remove("alex"));
+            assertTrue(trie.remove("alfred"));
+            assertEquals(0, trie.size());
+            assertEquals(0, trie.count(""));
+            trie.add("al");
+            assertEquals(List.of("al"), sorted(trie, ""));
+        }
+    }
+
+    @Test
+    void testAddSortedMatchesAdd() {
+        Random random = new Random(15);
+        List<String> names = randomNames(random, 6000);
+        names.add("");
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(null); // duplicates left in
+
+        PassengerIndex oneByOne = new RadixPassengerTrie();
+        for (String name : names) {
+            oneByOne.add(name);
+        }
+        PassengerIndex bulk = new RadixPassengerTrie();
+        assertEquals(oneByOne.size(), bulk.addSorted(sortedNames.iterator()));
+        assertEquals(oneByOne.size(), bulk.size());
+        for (String prefix : new String[]{"", "a", "ab", "cdc", "dddd", "x"}) {
+            assertEquals(sorted(oneByOne, prefix), sorted(bulk, prefix));
+            assertEquals(oneByOne.count(prefix), bulk.count(prefix));
+            int count = bulk.count(prefix);
+            for (int rank = 0; rank < count; rank += 1 + count / 30) {
+                assertEquals(oneByOne.nameAt(prefix, rank), bulk.nameAt(prefix, rank));
+            }
+        }
+
+        // still a normal trie afterwards
+        assertTrue(bulk.remove("abc") == oneByOne.remove("abc"));
+        bulk.add("abcabcabc");
+        oneByOne.add("abcabcabc");
+        assertEquals(sorted(oneByOne, "ab"), sorted(bulk, "ab"));
+        // second load goes through add
+        boolean hadAaa = sorted(bulk, "aaa").contains("aaa");
+        assertEquals(hadAaa ? 1 : 2, bulk.addSorted(List.of("aaa", "zzz").iterator()));
+        assertEquals(List.of("zzz"), sorted(bulk, "z"));
+    }
+
+    @Test
+    void testAddSortedRejectsUnsorted() {
+        PassengerIndex trie = new RadixPassengerTrie();
+        assertThrows(IllegalArgumentException.class,
+                () -> trie.addSorted(List.of("alex", "bob", "al", "carl").iterator()));
+        assertEquals(List.of("alex", "bob"), sorted(trie, ""));
+        assertEquals(2, trie.count(""));
+        assertEquals(1, trie.count("a"));
+    }
+
+    @Test
+    void testMappedTrieMatchesRadix() throws IOException {
+        Random random = new Random(16);
+        RadixPassengerTrie radix = new RadixPassengerTrie();
+        for (String name : randomNames(random, 5000)) {
+            radix.add(name);
+        }
+        radix.add("");
+        for (String name : randomNames(random, 1000)) {
+            radix.remove(name); // dead branches shouldn't make it into the file
+        }
+
+        Path file = Files.createTempFile("passengers", ".idx");
+        try {
+            MappedPassengerTrie.write(radix, file);
+            MappedPassengerTrie mapped = MappedPassengerTrie.open(file);
+            assertEquals(radix.size(), mapped.size());
+            assertTrue(mapped.nodeCount() <= radix.nodeCount());
+            assertEquals(Files.size(file), mapped.mappedBytes());
+            for (String prefix : new String[]{"", "a", "ab", "cdc", "dddd", "x"}) {
+                assertEquals(sorted(radix, prefix), sorted(mapped, prefix));
+                assertEquals(radix.count(prefix), mapped.count(prefix));
+                List<String> page = new ArrayList<>();
+                List<String> expected = new ArrayList<>();
+                mapped.collect(prefix, "b", 10, page);
+                radix.collect(prefix, "b", 10, expected);
+                assertEquals(expected, page);
+                for (int rank = 0; rank < radix.count(prefix); rank += 97) {
+                    assertEquals(radix.nameAt(prefix, rank), mapped.nameAt(prefix, rank));
+                }
+            }
+            assertThrows(UnsupportedOperationException.class, () -> mapped.add("abc"));
+            assertThrows(UnsupportedOperationException.class, () -> mapped.remove("abc"));
+
+            // writing the mapped one again gives the same bytes
+            Path again = Files.createTempFile("passengers", ".idx");
+            try {
+                MappedPassengerTrie.write(mapped, again);
+                assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again));
+            } finally {
+                Files.delete(again);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testMappedTrieRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("passengers", ".idx");
+        try {
+            Files.write(file, "not an index at all".getBytes());
+            assertThrows(IOException.class, () -> MappedPassengerTrie.open(file));
+
+            RadixPassengerTrie radix = new RadixPassengerTrie();
+            radix.add("alex");
+            MappedPassengerTrie.write(radix, file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+            assertThrows(IOException.class, () -> MappedPassengerTrie.open(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testConcurrentTrieMatchesHashTrie() {
+        Random random = new Random(17);
+        PassengerIndex hash = new HashPassengerTrie();
+        PassengerIndex concurrent = new ConcurrentPassengerTrie();
+        for (String name : randomNames(random, 5000)) {
+            hash.add(name);
+            concurrent.add(name);
+        }
+        for (String name : randomNames(random, 1000)) {
+            assertEquals(hash.remove(name), concurrent.remove(name));
+        }
+        assertEquals(hash.size(), concurrent.size());
+        for (String prefix : new String[]{"", "a", "ab", "cdc", "dddd", "x"}) {
+            assertEquals(sorted(hash, prefix), sorted(concurrent, prefix));
+            List<String> all = new ArrayList<>();
+            concurrent.collect(prefix, all);
+            assertEquals(sorted(hash, prefix), all); // already in order
+            List<String> page = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            concurrent.collect(prefix, "bc", 10, page);
+            hash.collect(prefix, "bc", 10, expected);
+            assertEquals(expected, page);
+            assertEquals(hash.count(prefix), concurrent.count(prefix));
+        }
+    }
+
+    @Test
+    void testConcurrentTrieManyWriters() throws Exception {
+        // 8 threads add overlapping slices of the same names, the result has to be the same as adding them on one
+        // thread and size has to count every name once
+        List<String> names = randomNames(new Random(18), 40000);
+        PassengerIndex expected = new HashPassengerTrie();
+        for (String name : names) {
+            expected.add(name);
+        }
+        PassengerIndex concurrent = new ConcurrentPassengerTrie();
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * names.size() / threads;
+            writers[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // each thread starts at its own slice and wraps around, so every name is added twice
+                for (int i = 0; i < names.size() / threads * 2; i++) {
+                    concurrent.add(names.get((first + i) % names.size()));
+                }
+            });
+            writers[t].start();
+        }
+        go.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(expected.size(), concurrent.size());
+        assertEquals(sorted(expected, ""), sorted(concurrent, ""));
+    }
+
+    @Test
+    void testConcurrentTrieSearchesWhileAdding() throws Exception {
+        // a name added before a search starts is always found, readers never see a broken trie
+        List<String> names = randomNames(new Random(19), 30000);
+        PassengerIndex concurrent = new ConcurrentPassengerTrie();
+        AtomicInteger published = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < names.size(); i++) {
+                concurrent.add(names.get(i));
+                published.set(i + 1);
+            }
+        });
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            Random random = new Random(r);
+            readers[r] = new Thread(() -> {
+                while (published.get() < names.size()) {
+                    int known = published.get();
+                    if (known == 0) {
+                        continue;
+                    }
+                    String name = names.get(random.nextInt(known));
+                    List<String> found = new ArrayList<>();
+                    concurrent.collect(name, found);
+                    if (!found.contains(name)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    void testEditDistance() {
+        assertTrue(EditDistance.within("kitten", "sitting", 3, false));
+        assertFalse(EditDistance.within("kitten", "sitting", 2, false));
+        assertTrue(EditDistance.within("alex", "alex", 0, false));
+        assertTrue(EditDistance.within("", "ab", 2, false));
+        assertFalse(EditDistance.within("", "ab", 1, false));
+        assertTrue(EditDistance.within("alx", "alexander", 1, true));  // "alex" is one insert away
+        assertFalse(EditDistance.within("alx", "alexander", 1, false));
+        assertTrue(EditDistance.within("ab", "zzz", 2, true));         // empty prefix is 2 away
+    }
+
+    @Test
+    void testSimilarMatchesBruteForce() {
+        Random random = new Random(20);
+        PassengerIndex hash = new HashPassengerTrie(); // fallback: checks every name
+        PassengerIndex radix = new RadixPassengerTrie();
+        PassengerIndex concurrent = new ConcurrentPassengerTrie();
+        for (String name : randomNames(random, 4000)) {
+            hash.add(name);
+            radix.add(name);
+            concurrent.add(name);
+        }
+        for (String query : randomNames(random, 40)) {
+            for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+                for (boolean asPrefix : new boolean[]{false, true}) {
+                    List<String> expected = new ArrayList<>();
+                    hash.collectSimilar(query, maxEdits, asPrefix, expected);
+                    expected.sort(null);
+                    List<String> fromRadix = new ArrayList<>();
+                    radix.collectSimilar(query, maxEdits, asPrefix, fromRadix);
+                    List<String> fromConcurrent = new ArrayList<>();
+                    concurrent.collectSimilar(query, maxEdits, asPrefix, fromConcurrent);
+                    assertEquals(expected, fromRadix, query + " " + maxEdits + " " + asPrefix);
+                    assertEquals(expected, fromConcurrent, query + " " + maxEdits + " " + asPrefix);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRadixUsesLessMemory() {
+        Random random = new Random(12);
+        PassengerIndex hash = new HashPassengerTrie();
+        PassengerIndex radix = new RadixPassengerTrie();
+        for (int i = 0; i < 20000; i++) {
+            String name = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            hash.add(name);
+            radix.add(name);
+        }
+        assertTrue(radix.nodeCount() < hash.nodeCount());
+        assertTrue(radix.bytesPerName() * 4 < hash.bytesPerName());
+    }
+}
+
+class CityNetworkGeneratorTest {
+    @Test
+    void testShapes() {
+        for (CityNetworkGenerator.Topology topology : CityNetworkGenerator.Topology.values()) {
+            for (int n : new int[]{0, 1, 2, 3, 17, 1000}) {
+                CityNetworkGenerator generator = new CityNetworkGenerator(topology, n, 7);
+                Building[] buildings = generator.buildings();
+                Track[] tracks = generator.tracks();
+                assertEquals(n, buildings.length);
+                assertEquals(generator.trackCount(), tracks.length, topology + " " + n);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(i, buildings[i].id().buildingID());
+                    assertTrue(buildings[i].occupants() > 0);
+                }
+                for (int i = 0; i < tracks.length; i++) {
+                    assertEquals(i, tracks[i].id().trackId());
+                    assertTrue(tracks[i].startBuildingId().buildingID() < n && tracks[i].endBuildingId().buildingID() < n);
+                    assertNotEquals(tracks[i].startBuildingId(), tracks[i].endBuildingId());
+                    assertTrue(tracks[i].cost() > 0 && tracks[i].capacity() > 0);
+                }
+                // every topology is connected
+                if (n > 0) {
+                    assertEquals(n - 1, new McMetro(tracks, buildings).bestMetroSystem().length, topology + " " + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSeeded() {
+        for (CityNetworkGenerator.Topology topology : CityNetworkGenerator.Topology.values()) {
+            CityNetworkGenerator one = new CityNetworkGenerator(topology, 500, 42);
+            CityNetworkGenerator again = new CityNetworkGenerator(topology, 500, 42);
+            assertArrayEquals(one.buildings(), again.buildings());
+            assertArrayEquals(one.tracks(), again.tracks());
+            assertFalse(Arrays.equals(one.buildings(), new CityNetworkGenerator(topology, 500, 43).buildings()));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, -1, 0));
+    }
+
+    @Test
+    void testTopologies() {
+        // grid: everything flows to the bottom right corner
+        CityNetworkGenerator grid = new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, 100, 1);
+        McMetro metro = new McMetro(grid.tracks(), grid.buildings());
+        assertTrue(metro.maxPassengers(new BuildingID(0), new BuildingID(99)) > 0);
+        assertEquals(0, metro.maxPassengers(new BuildingID(99), new BuildingID(0)));
+
+        // hub and spoke: two way everywhere, a spoke's flow is capped by its two tracks
+        CityNetworkGenerator hub = new CityNetworkGenerator(CityNetworkGenerator.Topology.HUB_AND_SPOKE, 400, 1);
+        metro = new McMetro(hub.tracks(), hub.buildings());
+        assertTrue(metro.maxPassengers(new BuildingID(399), new BuildingID(200)) > 0);
+        assertTrue(metro.maxPassengers(new BuildingID(200), new BuildingID(399)) > 0);
+
+        // scale free: a few buildings collect most of the tracks
+        CityNetworkGenerator scaleFree = new CityNetworkGenerator(CityNetworkGenerator.Topology.SCALE_FREE, 10000, 1);
+        int[] degree = new int[10000];
+        for (Track track : scaleFree.tracks()) {
+            degree[track.startBuildingId().buildingID()]++;
+            degree[track.endBuildingId().buildingID()]++;
+        }
+        assertTrue(Arrays.stream(degree).max().getAsInt() > 100);
+
+        // long chain: n BFS levels and one augmenting path through every track, taken in id order
+        int n = 200000;
+        CityNetworkGenerator chain = new CityNetworkGenerator(CityNetworkGenerator.Topology.LONG_CHAIN, n, 1);
+        metro = new McMetro(chain.tracks(), chain.buildings());
+        TrackID[] best = metro.bestMetroSystem();
+        assertEquals(n - 1, best.length);
+        for (int i = 0; i < best.length; i++) {
+            assertEquals(i, best[i].trackId());
+        }
+        assertEquals(100, metro.maxPassengers(new BuildingID(0), new BuildingID(n - 1)));
+
+        // the chain through NaiveDisjointSet in id order and backwards: union by rank keeps the trees flat, so
+        // its recursive find never goes deep on any input order
+        for (boolean backwards : new boolean[]{false, true}) {
+            NaiveDisjointSet<Integer> set = new NaiveDisjointSet<>();
+            for (int i = 0; i < n; i++) {
+                set.add(i);
+            }
+            Track[] tracks = chain.tracks();
+            for (int i = 0; i < tracks.length; i++) {
+                Track track = tracks[backwards ? tracks.length - 1 - i : i];
+                set.union(track.startBuildingId().buildingID(), track.endBuildingId().buildingID());
+            }
+            int deepest = 0;
+            for (int i = 0; i < n; i++) {
+                int depth = 0;
+                for (Integer node = i; !set.parentMap.get(node).equals(node); node = set.parentMap.get(node)) {
+                    depth++;
+                }
+                deepest = Math.max(deepest, depth);
+            }
+            assertEquals(1, deepest);
+            assertEquals(set.find(0), set.find(n - 1));
+        }
+    }
+
+    @Test
+    void testWriteCsv() throws IOException {
+        CityNetworkGenerator generator = new CityNetworkGenerator(CityNetworkGenerator.Topology.SCALE_FREE, 300, 5);
+        Path buildingsFile = Files.createTempFile("buildings", ".csv");
+        Path tracksFile = Files.createTempFile("tracks", ".csv");
+        try {
+            generator.writeCsv(buildingsFile, tracksFile);
+            List<String> buildingLines = Files.readAllLines(buildingsFile);
+            List<String> trackLines = Files.readAllLines(tracksFile);
+            assertEquals("id,occupants", buildingLines.get(0));
+            assertEquals("id,start,end,cost,capacity", trackLines.get(0));
+
+            Building[] buildings = generator.buildings();
+            assertEquals(buildings.length + 1, buildingLines.size());
+            for (int i = 0; i < buildings.length; i++) {
+                assertEquals(i + "," + buildings[i].occupants(), buildingLines.get(i + 1));
+            }
+            Track[] tracks = generator.tracks();
+            assertEquals(tracks.length + 1, trackLines.size());
+            for (int i = 0; i < tracks.length; i++) {
+                Track t = tracks[i];
+                assertEquals(i + "," + t.startBuildingId().buildingID() + "," + t.endBuildingId().buildingID() + ","
+                        + t.cost() + "," + t.capacity(), trackLines.get(i + 1));
+            }
+        } finally {
+            Files.deleteIfExists(buildingsFile);
+            Files.deleteIfExists(tracksFile);
+        }
+    }
+}
+
+class NetworkLoaderTest {
+    static void assertSameColumns(NetworkColumns expected, NetworkColumns actual) {
+        assertArrayEquals(expected.buildingIds(), actual.buildingIds());
+        assertArrayEquals(expected.occupants(), actual.occupants());
+        assertArrayEquals(expected.trackIds(), actual.trackIds());
+        assertArrayEquals(expected.starts(), actual.starts());
+        assertArrayEquals(expected.ends(), actual.ends());
+        assertArrayEquals(expected.costs(), actual.costs());
+        assertArrayEquals(expected.capacities(), actual.capacities());
+    }
+
+    // every query agrees between a McMetro from records and one from the same network as columns
+    static void assertSameAnswers(McMetro records, McMetro columns, int buildings, Random random) {
+        assertArrayEquals(records.bestMetroSystem(), columns.bestMetroSystem());
+        assertArrayEquals(records.bestMetroSystem(ForkJoinPool.commonPool()), columns.bestMetroSystem(ForkJoinPool.commonPool()));
+        for (int q = 0; q < 20; q++) {
+            BuildingID start = new BuildingID(random.nextInt(buildings + 2) - 1);
+            BuildingID end = new BuildingID(random.nextInt(buildings + 2) - 1);
+            assertEquals(records.maxPassengers(start, end), columns.maxPassengers(start, end));
+        }
+    }
+
+    @Test
+    void testCsvRoundTrip() throws IOException {
+        for (CityNetworkGenerator.Topology topology : CityNetworkGenerator.Topology.values()) {
+            CityNetworkGenerator generator = new CityNetworkGenerator(topology, 400, 11);
+            Path buildingsFile = Files.createTempFile("buildings", ".csv");
+            Path tracksFile = Files.createTempFile("tracks", ".csv");
+            try {
+                generator.writeCsv(buildingsFile, tracksFile);
+                assertSameColumns(generator.columns(), NetworkLoader.readCsv(buildingsFile, tracksFile));
+                // lines split across mapped chunks
+                int[][] small = NetworkLoader.readCsv(tracksFile, 5, 7);
+                assertArrayEquals(generator.columns().capacities(), small[4]);
+            } finally {
+                Files.deleteIfExists(buildingsFile);
+                Files.deleteIfExists(tracksFile);
+            }
+        }
+    }
+
+    @Test
+    void testCsvFormat() throws IOException {
+        Path file = Files.createTempFile("tracks", ".csv");
+        try {
+            Files.writeString(file, "id,start,end\r\n\r\n1,-2,3\r\n 4, 5 ,-2147483648\n\n2147483647,0,0");
+            int[][] columns = NetworkLoader.readCsv(file, 3, 1 << 20);
+            assertArrayEquals(new int[]{1, 4, 2147483647}, columns[0]);
+            assertArrayEquals(new int[]{-2, 5, 0}, columns[1]);
+            assertArrayEquals(new int[]{3, Integer.MIN_VALUE, 0}, columns[2]);
+
+            Files.writeString(file, "");
+            assertEquals(0, NetworkLoader.readCsv(file, 3, 1 << 20)[0].length);
+
+            // header after blank lines is still the first line
+            Files.writeString(file, "\n \nid,start,end\n1,2,3\n");
+            assertArrayEquals(new int[]{3}, NetworkLoader.readCsv(file, 3, 1 << 20)[2]);
+
+            for (String bad : new String[]{"1,2\n", "1,2,3,4\n", "1,,3\n", "1,2,x\n", "1,2,2147483648\n", "1,2,--3\n", "1,2-,3\n",
+                    "1,2 3,4\n", "1,2,- 3\n", "1,2,3\nid,start,end\n"}) {
+                Files.writeString(file, bad);
+                assertThrows(IOException.class, () -> NetworkLoader.readCsv(file, 3, 1 << 20), bad);
+            }
+
+            // blanks inside a number used to be dropped, 1 2 loaded as building 12
+            Files.writeString(file, "1 2,5\n");
+            IOException spaced = assertThrows(IOException.class, () -> NetworkLoader.readCsv(file, 2, 1 << 20));
+            assertTrue(spaced.getMessage().contains("line 1"), spaced.getMessage());
+
+            // a letter O instead of a zero halfway down is an error, not a second header
+            Files.writeString(file, "id,occupants\n1,5\nO,7\n3,9\n");
+            IOException typo = assertThrows(IOException.class, () -> NetworkLoader.readCsv(file, 2, 1 << 20));
+            assertTrue(typo.getMessage().contains("line 3"), typo.getMessage());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testBinaryRoundTrip() throws IOException {
+        NetworkColumns network = new CityNetworkGenerator(CityNetworkGenerator.Topology.SCALE_FREE, 300000, 2).columns();
+        Path file = Files.createTempFile("network", ".bin");
+        try {
+            NetworkLoader.writeBinary(network, file);
+            assertEquals(16 + 4L * (2 * network.buildingCount() + 5 * network.trackCount()), Files.size(file));
+            assertSameColumns(network, NetworkLoader.readBinary(file));
+
+            NetworkColumns empty = new NetworkColumns(new int[0], new int[0], new int[0], new int[0], new int[0], new int[0], new int[0]);
+            NetworkLoader.writeBinary(empty, file);
+            assertSameColumns(empty, NetworkLoader.readBinary(file));
+
+            NetworkLoader.writeBinary(network, file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+            assertThrows(IOException.class, () -> NetworkLoader.readBinary(file));
+            bytes[0] = 'X';
+            Files.write(file, bytes);
+            assertThrows(IOException.class, () -> NetworkLoader.readBinary(file));
+            Files.write(file, new byte[3]);
+            assertThrows(IOException.class, () -> NetworkLoader.readBinary(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testMcMetroFromColumns() {
+        Random random = new Random(31);
+        for (CityNetworkGenerator.Topology topology : CityNetworkGenerator.Topology.values()) {
+            CityNetworkGenerator generator = new CityNetworkGenerator(topology, 300, 4);
+            McMetro records = new McMetro(generator.tracks(), generator.buildings());
+            McMetro columns = new McMetro(generator.columns());
+            assertNull(columns.tracks); // nothing made yet
+            assertSameAnswers(records, columns, 300, random);
+            for (Track track : records.tracks) {
+                assertEquals(records.howGoodTrack(track), columns.howGoodTrack(track));
+            }
+            assertNull(columns.tracks); // scoring tracks doesn't make the records either
+        }
+
+        // duplicate building ids (first one wins), tracks to missing buildings, unsorted ids
+        NetworkColumns odd = new NetworkColumns(
+                new int[]{7, 3, 7, 5}, new int[]{50, 40, 1, 30},
+                new int[]{10, 11, 12, 13}, new int[]{3, 7, 5, 9}, new int[]{7, 5, 3, 3}, new int[]{1, 2, 3, 4},
+                new int[]{100, 20, 35, 9});
+        Building[] buildings = {new Building(new BuildingID(7), 50), new Building(new BuildingID(3), 40),
+                new Building(new BuildingID(7), 1), new Building(new BuildingID(5), 30)};
+        Track[] tracks = new Track[4];
+        for (int i = 0; i < 4; i++) {
+            tracks[i] = new Track(new TrackID(odd.trackIds()[i]), new BuildingID(odd.starts()[i]),
+                    new BuildingID(odd.ends()[i]), odd.costs()[i], odd.capacities()[i]);
+        }
+        McMetro records = new McMetro(tracks, buildings);
+        McMetro columns = new McMetro(odd);
+        assertSameAnswers(records, columns, 9, random);
+        assertEquals(40, columns.maxPassengers(new BuildingID(3), new BuildingID(7)));
+
+        // changing the network makes the records, and then it behaves like the record one
+        CityNetworkGenerator generator = new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, 400, 8);
+        records = new McMetro(generator.tracks(), generator.buildings());
+        columns = new McMetro(generator.columns());
+        BuildingID first = new BuildingID(0);
+        BuildingID last = new BuildingID(399);
+        assertEquals(records.maxPassengers(first, last), columns.maxPassengers(first, last));
+        for (int change = 0; change < 30; change++) {
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                TrackID id = new TrackID(random.nextInt(generator.trackCount()));
+                int capacity = random.nextInt(100);
+                records.updateCapacity(id, capacity);
+                columns.updateCapacity(id, capacity);
+            } else if (kind == 1) {
+                BuildingID id = new BuildingID(random.nextInt(400));
+                int occupants = random.nextInt(200);
+                records.updateOccupants(id, occupants);
+                columns.updateOccupants(id, occupants);
+            } else {
+                Track track = new Track(new TrackID(1000 + change), new BuildingID(random.nextInt(400)),
+                        new BuildingID(random.nextInt(400)), 1 + random.nextInt(5), random.nextInt(100));
+                records.addTrack(track);
+                columns.addTrack(track);
+            }
+            assertEquals(records.maxPassengers(first, last), columns.maxPassengers(first, last));
+        }
+        assertNotNull(columns.tracks);
+        assertSameAnswers(records, columns, 400, random);
+    }
+}
+
+class MetroMetricsTest {
+    @Test
+    void testOffByDefault() {
+        CityNetworkGenerator grid = new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, 25, 3);
+        McMetro metro = new McMetro(grid.tracks(), grid.buildings());
+        assertSame(MetroMetrics.DISABLED, metro.metrics());
+        metro.maxPassengers(new BuildingID(0), new BuildingID(24));
+        metro.bestMetroSystem();
+        metro.searchForPassengers("a");
+        MetricsSnapshot snapshot = MetroMetrics.DISABLED.snapshot();
+        assertEquals(0, snapshot.maxPassengersCalls());
+        assertEquals(0, snapshot.bestMetroSystemCalls());
+        assertEquals(0, snapshot.passengerSearches());
+        assertEquals(0, snapshot.maxPassengersLatency().count());
+        assertEquals(0, MetroMetrics.DISABLED.begin());
+    }
+
+    @Test
+    void testMaxPassengers() {
+        // 0 -> 1 -> 2 and 0 -> 2: two augmenting paths
+        BuildingID a = new BuildingID(0);
+        BuildingID b = new BuildingID(1);
+        BuildingID c = new BuildingID(2);
+        Building[] buildings = {new Building(a, 100), new Building(b, 100), new Building(c, 100)};
+        Track[] tracks = {
+                new Track(new TrackID(0), a, b, 1, 5),
+                new Track(new TrackID(1), b, c, 1, 5),
+                new Track(new TrackID(2), a, c, 1, 7)
+        };
+        for (FlowEngine engine : new FlowEngine[]{new DinicFlow(), new EdmondsKarpFlow(), new PushRelabelFlow()}) {
+            McMetro metro = new McMetro(tracks, buildings, engine);
+            MetroMetrics metrics = new MetroMetrics();
+            metro.setMetrics(metrics);
+            assertEquals(12, metro.maxPassengers(a, c));
+            assertEquals(12, metro.maxPassengers(a, c)); // from the last flow
+            assertEquals(0, metro.maxPassengers(a, new BuildingID(9)));
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(3, snapshot.maxPassengersCalls());
+            assertEquals(1, snapshot.flowRuns());
+            assertEquals(1, snapshot.flowCacheHits());
+            assertEquals(engine instanceof PushRelabelFlow ? 0 : 2, snapshot.augmentingPaths());
+            assertTrue(snapshot.flowNodeVisits() > 0);
+            assertEquals(3, snapshot.maxPassengersLatency().count());
+        }
+
+        // the service adds into the same metrics
+        McMetro metro = new McMetro(tracks, buildings);
+        MetroMetrics metrics = new MetroMetrics();
+        metro.setMetrics(metrics);
+        ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            MaxPassengersService service = new MaxPassengersService(metro, executor);
+            assertEquals(12, service.maxPassengers(a, c));
+            assertEquals(12, service.maxPassengers(a, c));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, metrics.snapshot().flowRuns());
+        assertEquals(4, metrics.snapshot().augmentingPaths());
+    }
+
+    @Test
+    void testBestMetroSystemAndSearch() {
+        // a-b and b-c are taken, a-c would close a cycle, c-d (the worst) is still needed after it
+        BuildingID a = new BuildingID(0);
+        BuildingID b = new BuildingID(1);
+        BuildingID c = new BuildingID(2);
+        BuildingID d = new BuildingID(3);
+        Building[] buildings = {new Building(a, 100), new Building(b, 100), new Building(c, 100), new Building(d, 100)};
+        Track[] tracks = {
+                new Track(new TrackID(0), a, b, 1, 90),
+                new Track(new TrackID(1), b, c, 1, 80),
+                new Track(new TrackID(2), a, c, 1, 70),
+                new Track(new TrackID(3), c, d, 1, 10)
+        };
+        McMetro metro = new McMetro(tracks, buildings);
+        MetroMetrics metrics = new MetroMetrics();
+        metro.setMetrics(metrics);
+        assertEquals(3, metro.bestMetroSystem().length);
+        assertEquals(3, metro.bestMetroSystem(ForkJoinPool.commonPool()).length);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.bestMetroSystemCalls());
+        assertEquals(8, snapshot.tracksExamined()); // both calls count the same 4 tracks and the one cycle
+        assertEquals(2, snapshot.cycleTracksSkipped());
+
+        // big enough for the parallel one to filter: tracks it threw away count as examined and skipped, so
+        // examined - skipped is still the tracks chosen
+        CityNetworkGenerator grid = new CityNetworkGenerator(CityNetworkGenerator.Topology.GRID, 40000, 3);
+        McMetro big = new McMetro(grid.tracks(), grid.buildings());
+        MetroMetrics sequential = new MetroMetrics();
+        big.setMetrics(sequential);
+        int chosen = big.bestMetroSystem().length;
+        MetroMetrics parallel = new MetroMetrics();
+        big.setMetrics(parallel);
+        assertEquals(chosen, big.bestMetroSystem(ForkJoinPool.commonPool()).length);
+        MetricsSnapshot one = sequential.snapshot();
+        MetricsSnapshot other = parallel.snapshot();
+        assertEquals(chosen, one.tracksExamined() - one.cycleTracksSkipped());
+        assertEquals(chosen, other.tracksExamined() - other.cycleTracksSkipped());
+        assertTrue(other.cycleTracksSkipped() > 0);
+        assertTrue(other.tracksExamined() >= one.tracksExamined()); // filters may look past where Kruskal stops
+
+        metro.addPassengers(new String[]{"alice", "alicent", "bob"});
+        assertEquals(2, metro.searchForPassengers("al").size());
+        assertEquals(1, metro.searchForPassengers("al", 1, null).names().size());
+        assertEquals(List.of("Bob"), metro.searchForPassengersFuzzy("bop", 1, false));
+        snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.passengerSearches());
+        assertEquals(4, snapshot.passengerResults());
+        assertEquals(5, snapshot.longestCompletion()); // "alicent" is 5 past "al"
+
+        // fuzzy matches aren't completions of the query, and finding nothing completes nothing
+        assertEquals(List.of("Alice", "Alicent", "Bob"), metro.searchForPassengersFuzzy("a", 6, false));
+        assertTrue(metro.searchForPassengers("z").isEmpty());
+        snapshot = metrics.snapshot();
+        assertEquals(5, snapshot.passengerSearches());
+        assertEquals(5, snapshot.longestCompletion());
+
+        metro.setMetrics(MetroMetrics.DISABLED);
+        metro.searchForPassengers("b");
+        assertEquals(5, metrics.snapshot().passengerSearches());
+    }
+
+    @Test
+    void testLatencyHistogram() {
+        long[] counts = new long[64];
+        counts[3] = 90;  // 8..15 ns
+        counts[10] = 9;  // 1024..2047 ns
+        counts[20] = 1;
+        LatencyHistogram histogram = new LatencyHistogram(counts);
+        assertEquals(100, histogram.count());
+        assertEquals(15, histogram.percentileNanos(0.5));
+        assertEquals(15, histogram.percentileNanos(0.9));
+        assertEquals(2047, histogram.percentileNanos(0.99));
+        assertEquals((2L << 20) - 1, histogram.percentileNanos(1));
+        assertEquals(0, new LatencyHistogram(new long[64]).percentileNanos(0.5));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentileNanos(1.5));
+    }
+}
+
+class TicketCheckerSchedulerTest {
+
+    // random shifts with lots of equal and touching ends, negative times included
+    static int[][] randomShifts(Random random, int count, int range) {
+        int[][] shifts = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int start = random.nextInt(range) - range / 2;
+            shifts[i] = new int[]{start, start + random.nextInt(20)};
+        }
+        return shifts;
+    }
+
+    // the array version, on a copy ordered so equal ends keep the earliest start first
+    static int expected(int[][] shifts) {
+        int[][] copy = shifts.clone();
+        Arrays.sort(copy, (a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]));
+        return McMetro.hireTicketCheckers(copy);
+    }
+
+    @Test
+    void testSortedFeed() {
+        int[][] shifts = randomShifts(new Random(21), 20000, 100000);
+        Arrays.sort(shifts, (a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]));
+        TicketCheckerScheduler scheduler = new TicketCheckerScheduler(0);
+        for (int[] shift : shifts) {
+            scheduler.add(shift[0], shift[1]);
+        }
+        assertEquals(scheduler.hiredSoFar(), scheduler.hired());
+        assertEquals(expected(shifts), scheduler.finish());
+        assertEquals(shifts.length, scheduler.shiftsSeen());
+    }
+
+    @Test
+    void testEqualEndsInAnyOrder() {
+        // sorted by end only is enough, ties used to throw when a smaller start came second
+        TicketCheckerScheduler scheduler = new TicketCheckerScheduler(0);
+        scheduler.add(3, 5);
+        scheduler.add(1, 5);
+        assertEquals(1, scheduler.finish());
+
+        // zero length shifts fit after a shift with length that ends with them, whichever came first
+        scheduler = new TicketCheckerScheduler(0);
+        scheduler.add(5, 5);
+        scheduler.add(3, 5);
+        assertEquals(2, scheduler.finish());
+        assertEquals(2, McMetro.hireTicketCheckers(new int[]{5, 3}, new int[]{5, 5}));
+
+        // whole feeds sorted by end with the ties shuffled, at every buffer size
+        Random random = new Random(24);
+        for (int buffer : new int[]{0, 1, 3}) {
+            int[][] shifts = randomShifts(random, 20000, 20000);
+            Collections.shuffle(Arrays.asList(shifts), random);
+            Arrays.sort(shifts, (a, b) -> Integer.compare(a[1], b[1])); // stable, ties stay shuffled
+            scheduler = new TicketCheckerScheduler(buffer);
+            for (int i = 0; i < shifts.length; i++) {
+                scheduler.add(shifts[i][0], shifts[i][1]);
+                if (i % 4999 == 0) {
+                    assertEquals(expected(Arrays.copyOf(shifts, i + 1)), scheduler.hired());
+                }
+            }
+            assertEquals(expected(shifts), scheduler.finish());
+        }
+        // an end earlier than one released still throws
+        TicketCheckerScheduler late = new TicketCheckerScheduler(0);
+        late.add(1, 5);
+        assertThrows(IllegalStateException.class, () -> late.add(0, 4));
+    }
+
+    @Test
+    void testRoughlySortedFeed() {
+        // sorted by end, then shuffled inside blocks of 64, a buffer of 64 is enough
+        Random random = new Random(22);
+        int[][] shifts = randomShifts(random, 50000, 200000);
+        Arrays.sort(shifts, (a, b) -> Integer.compare(a[1], b[1]));
+        for (int block = 0; block < shifts.length; block += 64) {
+            for (int i = Math.min(block + 64, shifts.length) - 1; i > block; i--) {
+                int j = block + random.nextInt(i - block + 1);
+                int[] swap = shifts[i];
+                shifts[i] = shifts[j];
+                shifts[j] = swap;
+            }
+        }
+        TicketCheckerScheduler scheduler = new TicketCheckerScheduler(64);
+        int checked = 0;
+        for (int i = 0; i < shifts.length; i++) {
+            scheduler.add(shifts[i][0], shifts[i][1]);
+            if (i % 5000 == 0) {
+                // the count at any point is the answer for what came in so far
+                assertEquals(expected(Arrays.copyOf(shifts, i + 1)), scheduler.hired());
+                assertTrue(scheduler.hiredSoFar() <= scheduler.hired());
+                checked++;
+            }
+        }
+        assertEquals(10, checked);
+        int total = scheduler.hired();
+        assertEquals(expected(shifts), scheduler.finish());
+        assertEquals(total, scheduler.hiredSoFar());
+    }
+
+    @Test
+    void testPrimitiveOverloadMatches() {
+        Random random = new Random(23);
+        for (int count : new int[]{0, 1, 10, 1000, 200000}) { // the last one takes the parallel sort
+            int[][] shifts = randomShifts(random, count, count * 4 + 10);
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = shifts[i][0];
+                ends[i] = shifts[i][1];
+            }
+            int[] startsBefore = starts.clone();
+            int[] endsBefore = ends.clone();
+            assertEquals(expected(shifts), McMetro.hireTicketCheckers(starts, ends));
+            assertArrayEquals(startsBefore, starts); // caller's arrays untouched
+            assertArrayEquals(endsBefore, ends);
+        }
+        assertThrows(IllegalArgumentException.class, () -> McMetro.hireTicketCheckers(new int[2], new int[3]));
+
+        // the two overloads really do differ on zero length shifts, the primitive one sorts ties by start so the
+        // zero length shift still fits after {3,5}. Don't "fix" them into agreeing
+        assertEquals(2, McMetro.hireTicketCheckers(new int[]{5, 3}, new int[]{5, 5}));
+        assertEquals(1, McMetro.hireTicketCheckers(new int[][]{{5, 5}, {3, 5}}));
+    }
+
+    // most shifts that pairwise can't share a checker: positive shifts overlapping a point x (open intervals)
+    // plus one zero length shift at x. Checked at every half step over a small range
+    static int mostAtOnce(int[] starts, int[] ends, int low, int high) {
+        int most = 0;
+        for (int x = 2 * low; x <= 2 * high; x++) {
+            int running = 0;
+            boolean point = false;
+            for (int i = 0; i < starts.length; i++) {
+                if (ends[i] > starts[i] && 2L * starts[i] < x && x < 2L * ends[i]) {
+                    running++;
+                } else if (ends[i] == starts[i] && 2L * starts[i] == x) {
+                    point = true;
+                }
+            }
+            most = Math.max(most, running + (point ? 1 : 0));
+        }
+        return most;
+    }
+
+    static void assertValid(CheckerAssignment assignment, int[] starts, int[] ends) {
+        int total = 0;
+        for (int c = 0; c < assignment.checkers(); c++) {
+            int[] mine = assignment.shiftsOf(c);
+            assertTrue(mine.length > 0);
+            total += mine.length;
+            for (int k = 0; k < mine.length; k++) {
+                assertEquals(c, assignment.checkerOf()[mine[k]]);
+                if (k > 0) {
+                    assertTrue(ends[mine[k - 1]] <= starts[mine[k]], "checker " + c + " has overlapping shifts");
+                }
+            }
+        }
+        assertEquals(starts.length, total);
+    }
+
+    @Test
+    void testAssignTicketCheckers() {
+        Random random = new Random(24);
+        for (int round = 0; round < 200; round++) {
+            int count = random.nextInt(40);
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(30) - 10;
+                ends[i] = starts[i] + random.nextInt(6); // zero length ones too
+            }
+            int[] startsBefore = starts.clone();
+            CheckerAssignment assignment = McMetro.assignTicketCheckers(starts, ends);
+            assertValid(assignment, starts, ends);
+            assertEquals(mostAtOnce(starts, ends, -10, 25), assignment.checkers());
+            assertArrayEquals(startsBefore, starts);
+        }
+
+        // big enough for the parallel sort, just has to be a valid assignment
+        int[][] schedule = randomShifts(random, 100000, 1000000);
+        CheckerAssignment assignment = McMetro.assignTicketCheckers(schedule);
+        int[] starts = new int[schedule.length];
+        int[] ends = new int[schedule.length];
+        for (int i = 0; i < schedule.length; i++) {
+            starts[i] = schedule[i][0];
+            ends[i] = schedule[i][1];
+        }
+        assertValid(assignment, starts, ends);
+
+        CheckerAssignment small = McMetro.assignTicketCheckers(new int[][]{{1, 3}, {2, 5}, {3, 4}, {4, 6}, {5, 5}});
+        assertEquals(2, small.checkers());
+        assertEquals(0, McMetro.assignTicketCheckers(new int[0][]).checkers());
+    }
+
+    // best total over every subset whose shifts can all be worked back to back
+    static long bestSubset(int[] starts, int[] ends, int[] weights) {
+        long best = 0;
+        for (int mask = 0; mask < 1 << starts.length; mask++) {
+            long total = 0;
+            boolean fits = true;
+            for (int i = 0; i < starts.length && fits; i++) {
+                if ((mask >> i & 1) == 0) {
+                    continue;
+                }
+                total += weights[i];
+                for (int j = i + 1; j < starts.length && fits; j++) {
+                    if ((mask >> j & 1) != 0) {
+                        fits = ends[i] <= starts[j] || ends[j] <= starts[i];
+                    }
+                }
+            }
+            if (fits) {
+                best = Math.max(best, total);
+            }
+        }
+        return best;
+    }
+
+    @Test
+    void testHireWeightedTicketCheckers() {
+        Random random = new Random(25);
+        for (int round = 0; round < 300; round++) {
+            int count = random.nextInt(13);
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int[] weights = new int[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(20) - 5;
+                ends[i] = starts[i] + random.nextInt(5);
+                weights[i] = random.nextInt(20) - 3;
+            }
+            assertEquals(bestSubset(starts, ends, weights), McMetro.hireWeightedTicketCheckers(starts, ends, weights));
+        }
+
+        // all weights 1 is the unweighted problem
+        int[][] schedule = randomShifts(random, 100000, 1000000);
+        int[][] weighted = new int[schedule.length][];
+        for (int i = 0; i < schedule.length; i++) {
+            weighted[i] = new int[]{schedule[i][0], schedule[i][1], 1};
+        }
+        assertEquals(expected(schedule), McMetro.hireWeightedTicketCheckers(weighted));
+
+        // one long peak shift beats two short ones, weights add up past int
+        assertEquals(10, McMetro.hireWeightedTicketCheckers(new int[][]{{0, 10, 10}, {0, 4, 3}, {5, 10, 3}}));
+        assertEquals(2L * Integer.MAX_VALUE, McMetro.hireWeightedTicketCheckers(
+                new int[][]{{0, 1, Integer.MAX_VALUE}, {1, 2, Integer.MAX_VALUE}}));
+        assertEquals(0, McMetro.hireWeightedTicketCheckers(new int[0][]));
+        assertThrows(IllegalArgumentException.class,
+                () -> McMetro.hireWeightedTicketCheckers(new int[2], new int[2], new int[1]));
+    }
+
+    @Test
+    void testTooLate() {
+        TicketCheckerScheduler scheduler = new TicketCheckerScheduler(2);
+        scheduler.add(0, 10);
+        scheduler.add(0, 20);
+        scheduler.add(0, 30); // buffer full, [0, 10] is released
+        assertThrows(IllegalStateException.class, () -> scheduler.add(0, 5));
+        scheduler.add(0, 10); // same end is still fine
+        assertEquals(1, scheduler.finish());
+        assertThrows(IllegalArgumentException.class, () -> new TicketCheckerScheduler(-1));
+    }
+
+    @Test
+    void testExtremeTimes() {
+        TicketCheckerScheduler scheduler = new TicketCheckerScheduler(4);
+        scheduler.add(Integer.MIN_VALUE, Integer.MIN_VALUE);
+        scheduler.add(Integer.MIN_VALUE, -1);
+        scheduler.add(-1, Integer.MAX_VALUE);
+        scheduler.add(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(expected(new int[][]{{Integer.MIN_VALUE, Integer.MIN_VALUE}, {Integer.MIN_VALUE, -1},
+                {-1, Integer.MAX_VALUE}, {Integer.MAX_VALUE, Integer.MAX_VALUE}}), scheduler.finish());
+        assertEquals(4, scheduler.hiredSoFar()); // all touching
+    }
+}
+
 class McMetroTest {
     @Test
     void testDirectConnection() {
@@ -158,7 +1487,8 @@ class McMetroTest {
 
         // Test maxPassengers
         assertEquals(100, metro.maxPassengers(bid1, bid2)); // Occupant constraint
-        assertEquals(100, metro.maxPassengers(bid2, bid1)); // Reverse direction
+        assertEquals(0, metro.maxPassengers(bid2, bid1)); // Reverse direction, tracks are one way
+        assertEquals(100, metro.maxPassengers(bid1, bid2)); // asking again gives the same answer
     }
 
     @Test
@@ -268,7 +1598,7 @@ class McMetroTest {
         // Test maxPassengers
         assertEquals(100, metro.maxPassengers(bid1, bid2)); // Track 1
         assertEquals(100, metro.maxPassengers(bid2, bid3)); // Track 2
-        assertEquals(0, metro.maxPassengers(bid1, bid3)); // No direct track
+        assertEquals(100, metro.maxPassengers(bid1, bid3)); // Through building 2, earlier queries don't drain the tracks
     }
 
     void testMaxPassengers() {
@@ -878,6 +2208,356 @@ class McMetroTest {
         assertEquals(11, maxPassengers);
     }
 
+    @Test
+    void testMaxPassengers_dinicEngine() { // same network as testMaxPassengers_complexcyclePath
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        BuildingID bid3 = new BuildingID(3);
+        BuildingID bid4 = new BuildingID(4);
+        BuildingID bid5 = new BuildingID(5);
+        BuildingID bid6 = new BuildingID(6);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 100),
+                new Building(bid2, 200),
+                new Building(bid3, 300),
+                new Building(bid4, 300),
+                new Building(bid5, 300),
+                new Building(bid6, 300),
+        };
+
+        Track[] tracks = new Track[]{
+                new Track(new TrackID(1), bid1, bid2, 100, 16),
+                new Track(new TrackID(2), bid1, bid3, 100, 13),
+                new Track(new TrackID(3), bid2, bid3, 100, 10),
+                new Track(new TrackID(4), bid3, bid2, 100, 4),
+                new Track(new TrackID(5), bid2, bid4, 100, 12),
+                new Track(new TrackID(6), bid3, bid5, 100, 14),
+                new Track(new TrackID(7), bid4, bid3, 100, 9),
+                new Track(new TrackID(8), bid5, bid4, 100, 7),
+                new Track(new TrackID(9), bid4, bid6, 100, 20),
+                new Track(new TrackID(10), bid5, bid6, 100, 4)
+        };
+
+        assertEquals(23, new McMetro(tracks, buildings, new DinicFlow()).maxPassengers(bid1, bid6));
+        assertEquals(23, new McMetro(tracks, buildings, new PushRelabelFlow()).maxPassengers(bid1, bid6));
+        assertEquals(23, new McMetro(tracks, buildings, new EdmondsKarpFlow()).maxPassengers(bid1, bid6));
+    }
+
+    @Test
+    void testMaxPassengers_enginesAgreeOnRandomNetworks() {
+        // cross check Dinic and push-relabel against the reference Edmonds-Karp engine
+        Random random = new Random(251);
+        for (int round = 0; round < 5; round++) {
+            int n = 10;
+            Building[] buildings = new Building[n];
+            for (int i = 0; i < n; i++) {
+                buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(100));
+            }
+            Track[] tracks = new Track[30];
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i] = new Track(new TrackID(i), new BuildingID(random.nextInt(n)),
+                        new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(80));
+            }
+
+            for (int s = 0; s < n; s++) {
+                for (int t = 0; t < n; t++) {
+                    BuildingID start = new BuildingID(s);
+                    BuildingID end = new BuildingID(t);
+                    int expected = new McMetro(tracks, buildings, new EdmondsKarpFlow()).maxPassengers(start, end);
+                    assertEquals(expected, new McMetro(tracks, buildings, new DinicFlow()).maxPassengers(start, end));
+                    assertEquals(expected, new McMetro(tracks, buildings, new PushRelabelFlow()).maxPassengers(start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMaxPassengers_longChain() {
+        // 50k buildings in a line, the engines are iterative so this can't blow the stack
+        int n = 50000;
+        Building[] buildings = new Building[n];
+        Track[] tracks = new Track[n - 1];
+        for (int i = 0; i < n; i++) {
+            buildings[i] = new Building(new BuildingID(i), 1000);
+        }
+        for (int i = 0; i < n - 1; i++) {
+            tracks[i] = new Track(new TrackID(i), new BuildingID(i), new BuildingID(i + 1), 1, 10 + i % 7);
+        }
+
+        assertEquals(10, new McMetro(tracks, buildings, new DinicFlow()).maxPassengers(new BuildingID(0), new BuildingID(n - 1)));
+        assertEquals(10, new McMetro(tracks, buildings, new PushRelabelFlow()).maxPassengers(new BuildingID(0), new BuildingID(n - 1)));
+        assertEquals(10, new McMetro(tracks, buildings, new EdmondsKarpFlow()).maxPassengers(new BuildingID(0), new BuildingID(n - 1)));
+    }
+
+    @Test
+    void testMaxPassengers_repeatedQueries() {
+        // same network as testMaxPassengers_complexcyclePath2, queried over and over on one instance
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        BuildingID bid3 = new BuildingID(3);
+        BuildingID bid4 = new BuildingID(4);
+        BuildingID bid5 = new BuildingID(5);
+        BuildingID bid6 = new BuildingID(6);
+        BuildingID bid7 = new BuildingID(7);
+        BuildingID bid8 = new BuildingID(8);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 100),
+                new Building(bid2, 200),
+                new Building(bid3, 300),
+                new Building(bid4, 300),
+                new Building(bid5, 300),
+                new Building(bid6, 300),
+                new Building(bid7, 300),
+                new Building(bid8, 300),
+        };
+
+        Track[] tracks = new Track[]{
+                new Track(new TrackID(1), bid1, bid2, 100, 6),
+                new Track(new TrackID(2), bid1, bid3, 100, 6),
+                new Track(new TrackID(3), bid3, bid2, 100, 5),
+                new Track(new TrackID(4), bid2, bid4, 100, 4),
+                new Track(new TrackID(5), bid2, bid5, 100, 2),
+                new Track(new TrackID(6), bid3, bid5, 100, 9),
+                new Track(new TrackID(7), bid4, bid6, 100, 4),
+                new Track(new TrackID(8), bid4, bid7, 100, 7),
+                new Track(new TrackID(9), bid5, bid4, 100, 8),
+                new Track(new TrackID(10), bid5, bid7, 100, 7),
+                new Track(new TrackID(11), bid6, bid8, 100, 7),
+                new Track(new TrackID(12), bid7, bid6, 100, 11),
+                new Track(new TrackID(13), bid7, bid8, 100, 4)
+        };
+
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(11, mcMetro.maxPassengers(bid1, bid8));
+            assertEquals(12, mcMetro.maxPassengers(bid1, bid4));
+            assertEquals(0, mcMetro.maxPassengers(bid8, bid1));
+        }
+
+        // the random networks again, but every engine answers all pairs on one instance
+        Random random = new Random(251);
+        int n = 10;
+        Building[] randomBuildings = new Building[n];
+        for (int i = 0; i < n; i++) {
+            randomBuildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(100));
+        }
+        Track[] randomTracks = new Track[30];
+        for (int i = 0; i < randomTracks.length; i++) {
+            randomTracks[i] = new Track(new TrackID(i), new BuildingID(random.nextInt(n)),
+                    new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(80));
+        }
+        McMetro reference = new McMetro(randomTracks, randomBuildings, new EdmondsKarpFlow());
+        McMetro dinic = new McMetro(randomTracks, randomBuildings, new DinicFlow());
+        McMetro pushRelabel = new McMetro(randomTracks, randomBuildings, new PushRelabelFlow());
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                int expected = new McMetro(randomTracks, randomBuildings, new EdmondsKarpFlow())
+                        .maxPassengers(new BuildingID(s), new BuildingID(t));
+                assertEquals(expected, reference.maxPassengers(new BuildingID(s), new BuildingID(t)));
+                assertEquals(expected, dinic.maxPassengers(new BuildingID(s), new BuildingID(t)));
+                assertEquals(expected, pushRelabel.maxPassengers(new BuildingID(s), new BuildingID(t)));
+            }
+        }
+    }
+
+    @Test
+    void testMaxPassengersService_batchMatchesSequential() throws Exception {
+        Random random = new Random(42);
+        int n = 40;
+        Building[] buildings = new Building[n];
+        for (int i = 0; i < n; i++) {
+            buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(500));
+        }
+        Track[] tracks = new Track[200];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = new Track(new TrackID(i), new BuildingID(random.nextInt(n)),
+                    new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(300));
+        }
+        McMetro mcMetro = new McMetro(tracks, buildings);
+
+        List<Trip> trips = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                trips.add(new Trip(new BuildingID(s), new BuildingID(t)));
+            }
+        }
+        trips.add(new Trip(new BuildingID(0), new BuildingID(999))); // unknown building
+
+        ExecutorService executor = MaxPassengersService.platformThreads(4);
+        try {
+            MaxPassengersService service = new MaxPassengersService(mcMetro, PushRelabelFlow::new, executor);
+            int[] results = service.maxPassengers(trips);
+
+            assertEquals(trips.size(), results.length);
+            for (int i = 0; i < trips.size(); i++) {
+                assertEquals(mcMetro.maxPassengers(trips.get(i).start(), trips.get(i).end()), results[i]);
+            }
+            assertEquals(mcMetro.maxPassengers(new BuildingID(3), new BuildingID(7)),
+                    service.submit(new BuildingID(3), new BuildingID(7)).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testMaxPassengersService_concurrentCallers() throws Exception {
+        Random random = new Random(7);
+        int n = 30;
+        Building[] buildings = new Building[n];
+        for (int i = 0; i < n; i++) {
+            buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(500));
+        }
+        Track[] tracks = new Track[150];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = new Track(new TrackID(i), new BuildingID(random.nextInt(n)),
+                    new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(300));
+        }
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        int[][] expected = new int[n][n];
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                expected[s][t] = mcMetro.maxPassengers(new BuildingID(s), new BuildingID(t));
+            }
+        }
+
+        // 8 threads hammer the same service directly, none of them should see another's residuals
+        MaxPassengersService service = new MaxPassengersService(mcMetro, MaxPassengersService.platformThreads(1));
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            int seed = i;
+            threads[i] = new Thread(() -> {
+                Random local = new Random(seed);
+                for (int q = 0; q < 2000; q++) {
+                    int s = local.nextInt(n);
+                    int t = local.nextInt(n);
+                    if (service.maxPassengers(new BuildingID(s), new BuildingID(t)) != expected[s][t]) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, mismatches.get());
+    }
+
+    @Test
+    void testMaxPassengers_gomoryHuMatchesUndirectedFlow() {
+        // the tree answers on the one way network should equal real max flows on a network
+        // where every track also exists in the other direction
+        Random random = new Random(99);
+        for (int round = 0; round < 5; round++) {
+            int n = 12;
+            Building[] buildings = new Building[n];
+            for (int i = 0; i < n; i++) {
+                buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(200));
+            }
+            Track[] tracks = new Track[25];
+            Track[] bothWays = new Track[50];
+            for (int i = 0; i < tracks.length; i++) {
+                BuildingID a = new BuildingID(random.nextInt(n));
+                BuildingID b = new BuildingID(random.nextInt(n));
+                int capacity = random.nextInt(150);
+                tracks[i] = new Track(new TrackID(i), a, b, 1, capacity);
+                bothWays[2 * i] = tracks[i];
+                bothWays[2 * i + 1] = new Track(new TrackID(100 + i), b, a, 1, capacity);
+            }
+
+            McMetro oneWay = new McMetro(tracks, buildings);
+            McMetro oneWayPushRelabel = new McMetro(tracks, buildings, new PushRelabelFlow());
+            McMetro twoWay = new McMetro(bothWays, buildings);
+            for (int s = 0; s < n; s++) {
+                for (int t = 0; t < n; t++) {
+                    BuildingID start = new BuildingID(s);
+                    BuildingID end = new BuildingID(t);
+                    int undirected = oneWay.maxPassengers(start, end, McMetro.FlowMode.UNDIRECTED_APPROXIMATION);
+                    if (s != t) {
+                        assertEquals(twoWay.maxPassengers(start, end), undirected);
+                    }
+                    assertEquals(undirected, oneWayPushRelabel.maxPassengers(start, end, McMetro.FlowMode.UNDIRECTED_APPROXIMATION));
+                    // never below the one way answer
+                    assertTrue(undirected >= oneWay.maxPassengers(start, end, McMetro.FlowMode.DIRECTED));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMaxPassengers_incrementalUpdates() {
+        // after every change the repaired flow should match a network built from scratch
+        FlowEngine[] engines = {new EdmondsKarpFlow(), new DinicFlow(), new PushRelabelFlow()};
+        for (FlowEngine engine : engines) {
+            Random random = new Random(2024);
+            int n = 15;
+            Building[] buildings = new Building[n];
+            for (int i = 0; i < n; i++) {
+                buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(200));
+            }
+            Track[] tracks = new Track[40];
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i] = new Track(new TrackID(i), new BuildingID(random.nextInt(n)),
+                        new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(150));
+            }
+            McMetro mcMetro = new McMetro(tracks, buildings, engine);
+            BuildingID start = new BuildingID(0);
+            BuildingID end = new BuildingID(n - 1);
+            mcMetro.maxPassengers(start, end);
+
+            int nextId = 1000;
+            for (int step = 0; step < 200; step++) {
+                int kind = random.nextInt(4);
+                if (kind == 0) {
+                    TrackID id = mcMetro.tracks[random.nextInt(mcMetro.tracks.length)].id();
+                    mcMetro.updateCapacity(id, random.nextInt(150));
+                } else if (kind == 1) {
+                    mcMetro.updateOccupants(new BuildingID(random.nextInt(n)), random.nextInt(200));
+                } else if (kind == 2 && mcMetro.tracks.length > 10) {
+                    mcMetro.removeTrack(mcMetro.tracks[random.nextInt(mcMetro.tracks.length)].id());
+                } else {
+                    mcMetro.addTrack(new Track(new TrackID(nextId++), new BuildingID(random.nextInt(n)),
+                            new BuildingID(random.nextInt(n)), 1 + random.nextInt(10), random.nextInt(150)));
+                }
+                if (step % 50 == 49) {
+                    // move the query somewhere else once in a while
+                    start = new BuildingID(random.nextInt(n));
+                    end = new BuildingID(random.nextInt(n));
+                }
+
+                McMetro fresh = new McMetro(mcMetro.tracks,
+                        mcMetro.buildingTable.values().toArray(new Building[0]), new EdmondsKarpFlow());
+                assertEquals(fresh.maxPassengers(start, end), mcMetro.maxPassengers(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testMaxPassengers_updatesDontTouchCallerArrays() {
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 100),
+                new Building(bid2, 200)
+        };
+        Track[] tracks = new Track[]{
+                new Track(new TrackID(1), bid1, bid2, 50, 120)
+        };
+
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        assertEquals(100, mcMetro.maxPassengers(bid1, bid2));
+        mcMetro.updateCapacity(new TrackID(1), 30);
+        assertEquals(30, mcMetro.maxPassengers(bid1, bid2));
+        mcMetro.updateOccupants(bid1, 10);
+        assertEquals(10, mcMetro.maxPassengers(bid1, bid2));
+        mcMetro.removeTrack(new TrackID(1));
+        assertEquals(0, mcMetro.maxPassengers(bid1, bid2));
+
+        assertEquals(120, tracks[0].capacity()); // caller's array untouched
+        assertThrows(IllegalArgumentException.class, () -> mcMetro.updateCapacity(new TrackID(7), 5));
+    }
+
     @Test
     void testBestMetro() {
         BuildingID bid1 = new BuildingID(1);
@@ -1289,10 +2969,252 @@ class McMetroTest {
         for (TrackID trackID : bms) {
             System.out.println(trackID);
         }
-        TrackID[] expected = new TrackID[]{tid7, tid6, tid3, tid5, tid2}; // if your printed output has the same tid, you are good
+        // tid3/tid6 and tid2/tid5 are equally good, ties go to the lower track id
+        TrackID[] expected = new TrackID[]{tid7, tid3, tid6, tid2, tid5}; // if your printed output has the same tid, you are good
         assertArrayEquals(expected, bms);
     }
 
+    @Test
+    void testBestMetroParallelMatchesSequential() {
+        // small capacities and costs so there are lots of ties, big enough that Filter-Kruskal partitions
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(9);
+            for (int round = 0; round < 4; round++) {
+                int n = round == 0 ? 50 : 5000;
+                int m = round == 0 ? 300 : 60000;
+                Building[] buildings = new Building[n];
+                for (int i = 0; i < n; i++) {
+                    buildings[i] = new Building(new BuildingID(i), 1 + random.nextInt(40));
+                }
+                Track[] tracks = new Track[m];
+                for (int i = 0; i < m; i++) {
+                    // ids shuffled a bit so id order isn't just array order
+                    tracks[i] = new Track(new TrackID((i * 7919) % m), new BuildingID(random.nextInt(n)),
+                            new BuildingID(random.nextInt(n)), 1 + random.nextInt(5), random.nextInt(60));
+                }
+
+                McMetro mcMetro = new McMetro(tracks, buildings);
+                assertArrayEquals(mcMetro.bestMetroSystem(), mcMetro.bestMetroSystem(pool));
+                // score index sorted on the pool this time
+                McMetro parallelFirst = new McMetro(tracks, buildings);
+                assertArrayEquals(mcMetro.bestMetroSystem(), parallelFirst.bestMetroSystem(pool));
+                assertArrayEquals(mcMetro.bestMetroSystem(), parallelFirst.bestMetroSystem());
+            }
+
+            // the hand made cases too
+            BuildingID bid1 = new BuildingID(1);
+            BuildingID bid2 = new BuildingID(2);
+            BuildingID bid3 = new BuildingID(3);
+            Building[] buildings = new Building[]{
+                    new Building(bid1, 100),
+                    new Building(bid2, 200),
+                    new Building(bid3, 300)
+            };
+            Track[] tracks = new Track[]{
+                    new Track(new TrackID(1), bid1, bid2, 1, 100),
+                    new Track(new TrackID(2), bid2, bid3, 1, 200),
+                    new Track(new TrackID(3), bid1, bid3, 1, 300)
+            };
+            McMetro mcMetro = new McMetro(tracks, buildings);
+            assertArrayEquals(new TrackID[]{new TrackID(2), new TrackID(1)}, mcMetro.bestMetroSystem(pool));
+            assertArrayEquals(new TrackID[0], new McMetro(new Track[0], new Building[0]).bestMetroSystem(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testBestMetroExactScores() {
+        // 100/100, 199/100 and 150/100 all truncate to 1, the exact fractions pick the two better tracks
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        BuildingID bid3 = new BuildingID(3);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 1000),
+                new Building(bid2, 1000),
+                new Building(bid3, 1000)
+        };
+        TrackID tid1 = new TrackID(1);
+        TrackID tid2 = new TrackID(2);
+        TrackID tid3 = new TrackID(3);
+        Track[] tracks = new Track[]{
+                new Track(tid1, bid1, bid2, 100, 100),
+                new Track(tid2, bid2, bid3, 100, 199),
+                new Track(tid3, bid1, bid3, 100, 150)
+        };
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        assertArrayEquals(new TrackID[]{tid2, tid3}, mcMetro.bestMetroSystem());
+        assertArrayEquals(new TrackID[]{tid2, tid3}, mcMetro.bestMetroSystem()); // from the cached order
+    }
+
+    @Test
+    void testBestMetroCacheInvalidated() {
+        BuildingID bid1 = new BuildingID(1);
+        BuildingID bid2 = new BuildingID(2);
+        BuildingID bid3 = new BuildingID(3);
+        Building[] buildings = new Building[]{
+                new Building(bid1, 1000),
+                new Building(bid2, 1000),
+                new Building(bid3, 1000)
+        };
+        TrackID tid1 = new TrackID(1);
+        TrackID tid2 = new TrackID(2);
+        TrackID tid3 = new TrackID(3);
+        Track[] tracks = new Track[]{
+                new Track(tid1, bid1, bid2, 100, 100),
+                new Track(tid2, bid2, bid3, 100, 199),
+                new Track(tid3, bid1, bid3, 100, 150)
+        };
+        McMetro mcMetro = new McMetro(tracks, buildings);
+        assertArrayEquals(new TrackID[]{tid2, tid3}, mcMetro.bestMetroSystem());
+
+        mcMetro.updateCapacity(tid1, 500);
+        assertArrayEquals(new TrackID[]{tid1, tid2}, mcMetro.bestMetroSystem());
+
+        // building 2 emptying out caps tracks 1 and 2 at 10
+        mcMetro.updateOccupants(bid2, 10);
+        assertArrayEquals(new TrackID[]{tid3, tid1}, mcMetro.bestMetroSystem());
+
+        mcMetro.removeTrack(tid3);
+        assertArrayEquals(new TrackID[]{tid1, tid2}, mcMetro.bestMetroSystem());
+
+        mcMetro.addTrack(new Track(new TrackID(4), bid3, bid1, 1, 1000));
+        assertArrayEquals(new TrackID[]{new TrackID(4), tid1}, mcMetro.bestMetroSystem());
+    }
+
+    @Test
+    void testSearchForPassengersSameWithEitherTrie() {
+        String[] passengers = {
+                "Alex", "Bob", "Ally", "al", "Bobby","bObbert", "David",
+                "Davie", "Davis", "ALEXANDRA", "alex"};
+        McMetro radix = new McMetro(new Track[0], new Building[0]);
+        McMetro hash = new McMetro(new Track[0], new Building[0]);
+        hash.setPassengerIndex(new HashPassengerTrie());
+        radix.addPassengers(passengers);
+        hash.addPassengers(passengers);
+        for (String prefix : new String[]{"a", "AL", "alex", "b", "Dav", "davi", "z", "alexandras"}) {
+            assertEquals(hash.searchForPassengers(prefix), radix.searchForPassengers(prefix));
+        }
+        assertEquals(List.of("Al", "Alex", "Alexandra", "Ally"), radix.searchForPassengers("a"));
+
+        // switching after names were added keeps them
+        radix.setPassengerIndex(new HashPassengerTrie());
+        assertEquals(hash.searchForPassengers("bo"), radix.searchForPassengers("bo"));
+    }
+
+    @Test
+    void testSearchForPassengersPaged() {
+        McMetro mcMetro = new McMetro(new Track[0], new Building[0]);
+        mcMetro.addPassengers(new String[]{
+                "Alex", "Bob", "Ally", "al", "Bobby","bObbert", "David", "Alfred", "ALBERT"});
+
+        PassengerPage first = mcMetro.searchForPassengers("al", 2, null);
+        assertEquals(List.of("Al", "Albert"), first.names());
+        PassengerPage second = mcMetro.searchForPassengers("AL", 2, first.nextCursor());
+        assertEquals(List.of("Alex", "Alfred"), second.names());
+        PassengerPage last = mcMetro.searchForPassengers("al", 2, second.nextCursor());
+        assertEquals(List.of("Ally"), last.names());
+        assertNull(last.nextCursor());
+
+        // exactly one page worth left: no cursor for an empty page after it
+        PassengerPage bob = mcMetro.searchForPassengers("bob", 3, null);
+        assertEquals(mcMetro.searchForPassengers("bob"), bob.names());
+        assertNull(bob.nextCursor());
+
+        assertEquals(List.of(), mcMetro.searchForPassengers("z", 5, null).names());
+        assertThrows(IllegalArgumentException.class, () -> mcMetro.searchForPassengers("a", 0, null));
+
+        mcMetro.setPassengerIndex(new HashPassengerTrie());
+        assertEquals(List.of("Alex", "Alfred"), mcMetro.searchForPassengers("al", 2, first.nextCursor()).names());
+    }
+
+    @Test
+    void testRemoveAndCountPassengers() {
+        McMetro mcMetro = new McMetro(new Track[0], new Building[0]);
+        mcMetro.addPassengers(new String[]{
+                "Alex", "Bob", "Ally", "al", "Bobby","bObbert", "David", "Alfred", "ALBERT"});
+        assertEquals(5, mcMetro.countPassengers("AL"));
+        assertEquals(3, mcMetro.countPassengers("bob"));
+        assertEquals(0, mcMetro.countPassengers("z"));
+        assertEquals(9, mcMetro.countPassengers(""));
+        assertEquals("Al", mcMetro.passengerAt("al", 0));
+        assertEquals("Alfred", mcMetro.passengerAt("al", 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> mcMetro.passengerAt("al", 5));
+
+        assertTrue(mcMetro.removePassenger("ALLY"));
+        assertFalse(mcMetro.removePassenger("Ally"));
+        assertEquals(4, mcMetro.countPassengers("al"));
+        assertEquals(List.of("Al", "Albert", "Alex", "Alfred"), mcMetro.searchForPassengers("al"));
+    }
+
+    @Test
+    void testLoadPassengers() throws IOException {
+        McMetro mcMetro = new McMetro(new Track[0], new Building[0]);
+        PassengerLoadStats stats = mcMetro.loadPassengers(Stream.of(
+                "al", "ALBERT", "Alex", "alex", "Alfred", "Ally", "Bob", "bobbert", "Bobby"));
+        assertEquals(8, stats.added());
+        assertEquals(List.of("Al", "Albert", "Alex", "Alfred", "Ally"), mcMetro.searchForPassengers("al"));
+        assertEquals(3, mcMetro.countPassengers("bob"));
+
+        Path file = Files.createTempFile("roster", ".txt");
+        try {
+            Files.write(file, List.of("Carl", "Chris", "Dave"));
+            assertEquals(3, mcMetro.loadPassengers(file).added()); // not empty any more, added one by one
+            assertEquals(List.of("Carl", "Chris"), mcMetro.searchForPassengers("c"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSaveAndOpenPassengers() throws IOException {
+        String[] passengers = {"Alex", "Bob", "Ally", "al", "Bobby","bObbert", "David", "Alfred", "ALBERT"};
+        Path file = Files.createTempFile("passengers", ".idx");
+        try {
+            McMetro before = new McMetro(new Track[0], new Building[0]);
+            before.addPassengers(passengers);
+            before.savePassengers(file);
+
+            McMetro after = new McMetro(new Track[0], new Building[0]);
+            after.openPassengers(file);
+            assertEquals(before.searchForPassengers("al"), after.searchForPassengers("al"));
+            assertEquals(List.of("Bob", "Bobbert"), after.searchForPassengers("b", 2, null).names());
+            assertEquals(3, after.countPassengers("bob"));
+            assertThrows(UnsupportedOperationException.class, () -> after.addPassenger("Carl"));
+
+            // copied back on heap it takes writes again
+            after.setPassengerIndex(new RadixPassengerTrie());
+            after.addPassenger("Carl");
+            assertEquals(List.of("Carl"), after.searchForPassengers("c"));
+
+            // the original hash trie can be saved too
+            McMetro hash = new McMetro(new Track[0], new Building[0]);
+            hash.setPassengerIndex(new HashPassengerTrie());
+            hash.addPassengers(passengers);
+            hash.savePassengers(file);
+            after.openPassengers(file);
+            assertEquals(hash.searchForPassengers(""), after.searchForPassengers(""));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSearchForPassengersFuzzy() {
+        McMetro mcMetro = new McMetro(new Track[0], new Building[0]);
+        mcMetro.addPassengers(new String[]{
+                "Alex", "Bob", "Ally", "al", "Bobby","bObbert", "David", "Alfred", "ALBERT", "Davis", "Davie"});
+        assertEquals(List.of("Alfred"), mcMetro.searchForPassengersFuzzy("Alfrd", 1, false));
+        assertEquals(List.of("Al", "Alex"), mcMetro.searchForPassengersFuzzy("alx", 1, false)); // "ally" is 2 away
+        assertEquals(List.of("David"), mcMetro.searchForPassengersFuzzy("Davud", 1, false));
+        assertEquals(List.of("David", "Davie", "Davis"), mcMetro.searchForPassengersFuzzy("Davud", 2, false));
+        assertEquals(List.of("Bob", "Bobbert", "Bobby"), mcMetro.searchForPassengersFuzzy("bpb", 1, true));
+        assertEquals(List.of(), mcMetro.searchForPassengersFuzzy("zzzzz", 2, false));
+        assertEquals(List.of("Alex"), mcMetro.searchForPassengersFuzzy("alex", 0, false));
+        assertThrows(IllegalArgumentException.class, () -> mcMetro.searchForPassengersFuzzy("alex", -1, false));
+    }
+
     /*@Test
     void testSearchForPassengers() {
         McMetro mcMetro = new McMetro(new Track[0], new Building[0]);
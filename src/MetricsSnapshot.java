@@ -0,0 +1,8 @@
+// MetroMetrics at one point in time, see there for what each counter means
+public record MetricsSnapshot(long maxPassengersCalls, long flowRuns, long flowCacheHits, long augmentingPaths,
+                              long flowNodeVisits, LatencyHistogram maxPassengersLatency,
+                              long bestMetroSystemCalls, long tracksExamined, long cycleTracksSkipped,
+                              LatencyHistogram bestMetroSystemLatency,
+                              long passengerSearches, long passengerResults, long longestCompletion,
+                              LatencyHistogram passengerSearchLatency) {
+}
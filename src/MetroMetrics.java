@@ -0,0 +1,146 @@
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// optional counters and latency histograms for McMetro's hot paths, turned on with McMetro.setMetrics
+// off by default: McMetro holds DISABLED, whose record calls return on the first line (a final field check),
+// and begin() doesn't even read the clock. The inner loops only count into locals or the flow engine's
+// last call counters, and the totals are handed over once per operation, so nothing is paid per edge or node.
+// LongAdder so concurrent MaxPassengersService queries and kiosk searches don't fight over one counter
+// latencies go into 64 log2 buckets, a coarse HdrHistogram: one add per call, percentiles within 2x
+//https://hdrhistogram.github.io/HdrHistogram/
+class MetroMetrics {
+    static final MetroMetrics DISABLED = new MetroMetrics(false);
+
+    private final boolean enabled;
+
+    // maxPassengers: every call, the ones that ran a flow engine, the ones answered from the last flow,
+    // and what the engine runs did (augmenting paths pushed, nodes taken off a BFS queue or discharged)
+    private final LongAdder maxPassengersCalls = new LongAdder();
+    private final LongAdder flowRuns = new LongAdder();
+    private final LongAdder flowCacheHits = new LongAdder();
+    private final LongAdder augmentingPaths = new LongAdder();
+    private final LongAdder flowNodeVisits = new LongAdder();
+    private final LongAdder[] maxPassengersLatency = buckets();
+
+    // bestMetroSystem: tracks looked at in score order, and the ones thrown away because they'd close a cycle
+    // (the parallel one counts the tracks its filters drop as both, see FilterKruskal.examined)
+    private final LongAdder bestMetroSystemCalls = new LongAdder();
+    private final LongAdder tracksExamined = new LongAdder();
+    private final LongAdder cycleTracksSkipped = new LongAdder();
+    private final LongAdder[] bestMetroSystemLatency = buckets();
+
+    // passenger searches (prefix, paged and fuzzy): names returned, and for prefix searches the longest completion,
+    // the most chars a returned name goes past the typed prefix. Not a walk depth: fuzzy searches don't count
+    // (the query isn't a prefix of what they return) and neither do searches that found nothing
+    private final LongAdder passengerSearches = new LongAdder();
+    private final LongAdder passengerResults = new LongAdder();
+    private final LongAccumulator longestCompletion = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] passengerSearchLatency = buckets();
+
+    MetroMetrics() {
+        this(true);
+    }
+
+    private MetroMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    // start time to hand back to one of the record calls, 0 when disabled
+    long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // maxPassengers that didn't run an engine: cached is true if it came from the last flow, false for a
+    // missing building or a self loop
+    void maxPassengersAnswered(long begin, boolean cached) {
+        if (!enabled) {
+            return;
+        }
+        maxPassengersCalls.increment();
+        if (cached) {
+            flowCacheHits.increment();
+        }
+        record(maxPassengersLatency, begin);
+    }
+
+    void maxPassengersFlow(long begin, FlowEngine engine) {
+        if (!enabled) {
+            return;
+        }
+        maxPassengersCalls.increment();
+        flowRuns.increment();
+        augmentingPaths.add(engine.lastAugmentingPaths());
+        flowNodeVisits.add(engine.lastNodeVisits());
+        record(maxPassengersLatency, begin);
+    }
+
+    // the parallel bestMetroSystem doesn't count tracks, it passes 0s
+    void bestMetroSystem(long begin, int examined, int skipped) {
+        if (!enabled) {
+            return;
+        }
+        bestMetroSystemCalls.increment();
+        tracksExamined.add(examined);
+        cycleTracksSkipped.add(skipped);
+        record(bestMetroSystemLatency, begin);
+    }
+
+    // results all start with typed
+    void passengerSearch(long begin, String typed, List<String> results) {
+        if (!enabled) {
+            return;
+        }
+        passengerSearches.increment();
+        passengerResults.add(results.size());
+        int longest = 0;
+        for (String name : results) {
+            longest = Math.max(longest, name.length() - typed.length());
+        }
+        longestCompletion.accumulate(longest);
+        record(passengerSearchLatency, begin);
+    }
+
+    void fuzzyPassengerSearch(long begin, List<String> results) {
+        if (!enabled) {
+            return;
+        }
+        passengerSearches.increment();
+        passengerResults.add(results.size());
+        record(passengerSearchLatency, begin);
+    }
+
+    MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(maxPassengersCalls.sum(), flowRuns.sum(), flowCacheHits.sum(),
+                augmentingPaths.sum(), flowNodeVisits.sum(), histogram(maxPassengersLatency),
+                bestMetroSystemCalls.sum(), tracksExamined.sum(), cycleTracksSkipped.sum(),
+                histogram(bestMetroSystemLatency),
+                passengerSearches.sum(), passengerResults.sum(), longestCompletion.get(),
+                histogram(passengerSearchLatency));
+    }
+
+    private static void record(LongAdder[] histogram, long begin) {
+        long nanos = Math.max(1, System.nanoTime() - begin);
+        histogram[63 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    private static LongAdder[] buckets() {
+        LongAdder[] buckets = new LongAdder[64];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        return buckets;
+    }
+
+    private static LatencyHistogram histogram(LongAdder[] buckets) {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new LatencyHistogram(counts);
+    }
+}
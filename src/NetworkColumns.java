@@ -0,0 +1,25 @@
+// a whole network as plain int columns instead of Building/Track records: buildings[i] is
+// (buildingIds[i], occupants[i]) and tracks[i] is (trackIds[i], starts[i], ends[i], costs[i], capacities[i]),
+// with starts/ends holding raw building ids. What NetworkLoader reads and McMetro(NetworkColumns) builds from
+public record NetworkColumns(int[] buildingIds, int[] occupants,
+                             int[] trackIds, int[] starts, int[] ends, int[] costs, int[] capacities) {
+    public NetworkColumns {
+        if (occupants.length != buildingIds.length) {
+            throw new IllegalArgumentException(buildingIds.length + " building ids but " + occupants.length + " occupants");
+        }
+        int tracks = trackIds.length;
+        if (starts.length != tracks || ends.length != tracks || costs.length != tracks || capacities.length != tracks) {
+            throw new IllegalArgumentException("track columns have different lengths: " + tracks + " ids, "
+                    + starts.length + " starts, " + ends.length + " ends, " + costs.length + " costs, "
+                    + capacities.length + " capacities");
+        }
+    }
+
+    int buildingCount() {
+        return buildingIds.length;
+    }
+
+    int trackCount() {
+        return trackIds.length;
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// loads a network into NetworkColumns without making a single Building or Track record, for McMetro(NetworkColumns)
+// CSV: the files CityNetworkGenerator.writeCsv makes (buildings "id,occupants", tracks "id,start,end,cost,capacity").
+// one header line (the first non blank line, if it starts with a letter) and blank lines are skipped, \r\n is fine,
+// blanks around a value are too but not inside one ("1 2" throws). The file is memory
+// mapped a chunk at a time and parsed a byte at a time straight into growing int columns, no Strings or readers
+// binary: writeBinary's format for fast restarts, big endian:
+//   header   magic, version, building count, track count     4 ints
+//   columns  building ids, occupants                          1 int per building each
+//            track ids, starts, ends, costs, capacities       1 int per track each
+// read back with one bulk IntBuffer get per column out of the mapping
+class NetworkLoader {
+    private static final int MAGIC = 0x4d45544e; // "METN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * 4;
+    private static final long CHUNK_BYTES = 1L << 30; // mapped at a time while parsing CSV
+
+    static NetworkColumns readCsv(Path buildingsFile, Path tracksFile) throws IOException {
+        int[][] buildings = readCsv(buildingsFile, 2, CHUNK_BYTES);
+        int[][] tracks = readCsv(tracksFile, 5, CHUNK_BYTES);
+        return new NetworkColumns(buildings[0], buildings[1], tracks[0], tracks[1], tracks[2], tracks[3], tracks[4]);
+    }
+
+    // every data line holds width comma separated ints, returns one column per value
+    // chunkBytes is only smaller than CHUNK_BYTES in tests, so lines split between chunks get tested
+    static int[][] readCsv(Path file, int width, long chunkBytes) throws IOException {
+        int[][] columns = new int[width][1024];
+        int rows = 0;
+        int[] row = new int[width];
+        // parser state, carried over from one chunk to the next
+        int column = 0;
+        long value = 0;
+        boolean negative = false;
+        boolean digits = false;
+        boolean spaced = false; // a blank came after this value's digits, another digit is an error
+        boolean header = false; // skipping to the end of the header line
+        boolean first = true; // no non blank line yet, only here a letter starts a header
+        long line = 1;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += chunkBytes) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkBytes, size - position));
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (header) {
+                        if (b == '\n') {
+                            header = false;
+                            line++;
+                        }
+                    } else if (b >= '0' && b <= '9') {
+                        if (spaced) {
+                            throw new IOException(file + " line " + line + ": blank inside a number");
+                        }
+                        value = value * 10 + (b - '0');
+                        digits = true;
+                        if (value > Integer.MAX_VALUE + 1L) {
+                            throw new IOException(file + " line " + line + ": number too big for an int");
+                        }
+                    } else if (b == '-' && !digits && !negative) {
+                        negative = true;
+                    } else if (b == ',') {
+                        if (column == width - 1) {
+                            throw new IOException(file + " line " + line + ": more than " + width + " values");
+                        }
+                        row[column++] = field(file, line, value, negative, digits);
+                        value = 0;
+                        negative = false;
+                        digits = false;
+                        spaced = false;
+                    } else if (b == '\n') {
+                        if (column > 0 || digits || negative) {
+                            rows = endLine(file, line, columns, rows, row, column, value, negative, digits);
+                            columns = grow(columns, rows);
+                            column = 0;
+                            value = 0;
+                            negative = false;
+                            digits = false;
+                            spaced = false;
+                            first = false;
+                        }
+                        line++;
+                    } else if (b == '\r' || b == ' ' || b == '\t') {
+                        spaced = digits || negative;
+                    } else if (first && column == 0 && !digits && !negative) {
+                        header = true;
+                        first = false;
+                    } else {
+                        throw new IOException(file + " line " + line + ": unexpected '" + (char) b + "'");
+                    }
+                }
+            }
+        }
+        if (column > 0 || digits || negative) { // no newline at the end
+            rows = endLine(file, line, columns, rows, row, column, value, negative, digits);
+        }
+        for (int c = 0; c < width; c++) {
+            columns[c] = Arrays.copyOf(columns[c], rows);
+        }
+        return columns;
+    }
+
+    private static int field(Path file, long line, long value, boolean negative, boolean digits) throws IOException {
+        if (!digits) {
+            throw new IOException(file + " line " + line + ": empty value");
+        }
+        if (!negative && value > Integer.MAX_VALUE) {
+            throw new IOException(file + " line " + line + ": number too big for an int");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    // stores the finished line as row number rows, returns the new row count
+    private static int endLine(Path file, long line, int[][] columns, int rows, int[] row, int column, long value,
+                               boolean negative, boolean digits) throws IOException {
+        row[column] = field(file, line, value, negative, digits);
+        if (column != columns.length - 1) {
+            throw new IOException(file + " line " + line + ": " + (column + 1) + " values, expected " + columns.length);
+        }
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][rows] = row[c];
+        }
+        return rows + 1;
+    }
+
+    // room for one more row
+    private static int[][] grow(int[][] columns, int rows) {
+        if (rows == columns[0].length) {
+            if (rows == Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("more rows than an int[] can hold");
+            }
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, rows * 2L);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], capacity);
+            }
+        }
+        return columns;
+    }
+
+    static void writeBinary(NetworkColumns network, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20); // big endian
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(network.buildingCount()).putInt(network.trackCount());
+            for (int[] column : new int[][]{network.buildingIds(), network.occupants(), network.trackIds(),
+                    network.starts(), network.ends(), network.costs(), network.capacities()}) {
+                int i = 0;
+                while (i < column.length) {
+                    if (buffer.remaining() < 4) {
+                        drain(channel, buffer);
+                    }
+                    int count = Math.min(column.length - i, buffer.remaining() / 4);
+                    buffer.asIntBuffer().put(column, i, count);
+                    buffer.position(buffer.position() + count * 4);
+                    i += count;
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static NetworkColumns readBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                throw new IOException(file + " is not a network file, too short");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a network file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + " has network file version " + header.getInt(4) + ", expected " + VERSION);
+            }
+            int buildings = header.getInt(8);
+            int tracks = header.getInt(12);
+            if (buildings < 0 || tracks < 0 || HEADER_BYTES + 4L * (2L * buildings + 5L * tracks) != length) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            long position = HEADER_BYTES;
+            int[][] columns = new int[7][];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new int[c < 2 ? buildings : tracks];
+                long bytes = 4L * columns[c].length;
+                if (bytes > 0) {
+                    // 4 bytes a row, past 536M rows one mapping can't hold a column
+                    if (bytes > Integer.MAX_VALUE) {
+                        throw new IOException(file + " has a column of " + bytes + " bytes, more than one mapping can hold");
+                    }
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).asIntBuffer().get(columns[c]);
+                }
+                position += bytes;
+            }
+            return new NetworkColumns(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], columns[6]);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// strategy interface for the trie behind McMetro's passenger search
+// names come in already lower cased and come back out as stored, McMetro does the capitalizing and sorting
+// implementations are not thread safe
+public interface PassengerIndex {
+    void add(String name);
+
+    // adds names given in String order (duplicates allowed), returns how many were new
+    // the fallback just adds them one by one
+    default int addSorted(Iterator<String> sortedNames) {
+        int before = size();
+        while (sortedNames.hasNext()) {
+            add(sortedNames.next());
+        }
+        return size() - before;
+    }
+
+    // every stored name starting with prefix, in any order
+    void collect(String prefix, List<String> results);
+
+    // up to limit names starting with prefix that sort (String.compareTo) after `after`, in order
+    // after == null starts from the first one. The fallback collects and sorts everything
+    default void collect(String prefix, String after, int limit, List<String> results) {
+        List<String> all = new ArrayList<>();
+        collect(prefix, all);
+        all.sort(null);
+        for (String name : all) {
+            if (results.size() >= limit) {
+                return;
+            }
+            if (after == null || name.compareTo(after) > 0) {
+                results.add(name);
+            }
+        }
+    }
+
+    // names within maxEdits insertions, deletions or substitutions of query, or with asPrefix names that start
+    // with something that close (typos in what was typed so far). The fallback checks every name
+    default void collectSimilar(String query, int maxEdits, boolean asPrefix, List<String> results) {
+        List<String> all = new ArrayList<>();
+        collect("", all);
+        for (String name : all) {
+            if (EditDistance.within(query, name, maxEdits, asPrefix)) {
+                results.add(name);
+            }
+        }
+    }
+
+    // true if the name was there
+    boolean remove(String name);
+
+    // how many names start with prefix. The fallback collects them
+    default int count(String prefix) {
+        List<String> all = new ArrayList<>();
+        collect(prefix, all);
+        return all.size();
+    }
+
+    // the rank-th (from 0) name starting with prefix in sorted order, null if there aren't that many
+    default String nameAt(String prefix, int rank) {
+        List<String> all = new ArrayList<>();
+        collect(prefix, all);
+        if (rank < 0 || rank >= all.size()) {
+            return null;
+        }
+        all.sort(null);
+        return all.get(rank);
+    }
+
+    int size(); // distinct names
+
+    int nodeCount();
+
+    // rough heap footprint of the trie (object headers, arrays, maps), for the memory per name numbers
+    long estimatedBytes();
+
+    default double bytesPerName() {
+        return size() == 0 ? 0 : (double) estimatedBytes() / size();
+    }
+}
@@ -0,0 +1,6 @@
+// what McMetro.loadPassengers did: names that were new and how long the load took
+public record PassengerLoadStats(int added, long nanos) {
+    double namesPerSecond() {
+        return nanos == 0 ? 0 : added * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,6 @@
+import java.util.List;
+
+// one page of McMetro.searchForPassengers(prefix, limit, cursor)
+// nextCursor goes into the call for the next page, null when there are no more names
+public record PassengerPage(List<String> names, String nextCursor) {
+}
@@ -0,0 +1,138 @@
+// highest-label push-relabel (Goldberg-Tarjan). Only the first phase is run since we just need
+// the value of the flow: once no node below height n has excess, the excess at the sink is the max flow
+//https://cp-algorithms.com/graph/push-relabel-faster.html
+public class PushRelabelFlow implements FlowEngine {
+    private int[] height = new int[0];
+    private long[] excess = new long[0];
+    private int[] current = new int[0];     // current arc of every node
+    private int[] bucketHead = new int[0];  // active nodes are kept in one linked stack per height
+    private int[] bucketNext = new int[0];
+    private int[] queue = new int[0];
+    private long nodeVisits; // last call's work, see FlowEngine: BFS nodes plus discharges
+
+    @Override
+    public int maxFlow(FlowNetwork network, int[] residual, int source, int sink) {
+        int n = network.nodeCount;
+        ensureCapacity(n);
+        int[] offsets = network.offsets;
+        int[] heads = network.heads;
+        int[] reverse = network.reverse;
+
+        java.util.Arrays.fill(excess, 0, n, 0);
+        java.util.Arrays.fill(bucketHead, 0, n, -1);
+        System.arraycopy(offsets, 0, current, 0, n);
+
+        // exact distance labels to the sink to start with, nodes that can't reach it stay at n (inactive)
+        java.util.Arrays.fill(height, 0, n, n);
+        int head = 0;
+        int tail = 0;
+        height[sink] = 0;
+        queue[tail++] = sink;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int edge = offsets[v]; edge < offsets[v + 1]; edge++) {
+                // reverse[edge] goes from heads[edge] into v
+                int u = heads[edge];
+                if (residual[reverse[edge]] > 0 && height[u] == n && u != source) {
+                    height[u] = height[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        height[source] = n;
+        int highest = 0;
+        long visits = tail;
+
+        // saturate everything leaving the source
+        for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+            int v = heads[edge];
+            int amount = residual[edge];
+            if (amount <= 0 || v == source) {
+                continue;
+            }
+            residual[edge] = 0;
+            residual[reverse[edge]] += amount;
+            if (excess[v] == 0 && v != sink && height[v] < n) {
+                activate(v);
+                highest = Math.max(highest, height[v]);
+            }
+            excess[v] += amount;
+        }
+
+        while (highest >= 0) {
+            int u = bucketHead[highest];
+            if (u < 0) {
+                highest--;
+                continue;
+            }
+            bucketHead[highest] = bucketNext[u];
+            visits++;
+
+            int edge = current[u];
+            int end = offsets[u + 1];
+            while (excess[u] > 0) {
+                if (edge == end) {
+                    // relabel: one above the lowest neighbour still reachable in the residual graph
+                    int minHeight = 2 * n;
+                    for (int e = offsets[u]; e < end; e++) {
+                        if (residual[e] > 0) {
+                            minHeight = Math.min(minHeight, height[heads[e]]);
+                        }
+                    }
+                    height[u] = minHeight + 1;
+                    edge = offsets[u];
+                    if (height[u] >= n) {
+                        break; // can't reach the sink anymore, its excess doesn't matter for the value
+                    }
+                    continue;
+                }
+                int v = heads[edge];
+                if (residual[edge] > 0 && height[u] == height[v] + 1) {
+                    int amount = (int) Math.min(excess[u], residual[edge]);
+                    residual[edge] -= amount;
+                    residual[reverse[edge]] += amount;
+                    excess[u] -= amount;
+                    if (excess[v] == 0 && v != sink && v != source) {
+                        // u may have been relabelled above the old highest bucket
+                        activate(v);
+                        highest = Math.max(highest, height[v]);
+                    }
+                    excess[v] += amount;
+                } else {
+                    edge++;
+                }
+            }
+            current[u] = edge;
+
+            if (excess[u] > 0 && height[u] < n) {
+                activate(u);
+                highest = Math.max(highest, height[u]);
+            }
+        }
+
+        nodeVisits = visits;
+        return (int) excess[sink];
+    }
+
+    // not an augmenting path engine, lastAugmentingPaths stays 0
+    @Override
+    public long lastNodeVisits() {
+        return nodeVisits;
+    }
+
+    private void activate(int u) {
+        bucketNext[u] = bucketHead[height[u]];
+        bucketHead[height[u]] = u;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (height.length < nodeCount) {
+            height = new int[nodeCount];
+            excess = new long[nodeCount];
+            current = new int[nodeCount];
+            bucketHead = new int[nodeCount];
+            bucketNext = new int[nodeCount];
+            queue = new int[nodeCount];
+        }
+    }
+}
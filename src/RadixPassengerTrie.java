@@ -0,0 +1,317 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+// compact passenger trie: path compressed (radix) nodes kept in parallel int arrays, edge labels are slices of
+// one shared char pool. No node objects, maps or boxed chars, a name costs a few ints plus its unshared chars.
+// children of a node form a linked list sorted by their first char so a walk visits names in order
+// every node also counts the names below it, so prefix counts and the k-th name only walk one path
+// lookups and walks are in RadixTrieReader, this class adds the arrays and the writes
+//https://en.wikipedia.org/wiki/Radix_tree
+class RadixPassengerTrie extends RadixTrieReader {
+
+    private char[] chars = new char[64]; // label pool, labels are never moved so splits just reslice them
+    private int charCount;
+
+    // node 0 is the root (empty label)
+    private int[] labelStart = new int[16];
+    private int[] labelLength = new int[16];
+    private int[] firstChild = new int[16];
+    private int[] nextSibling = new int[16];
+    private boolean[] terminal = new boolean[16];
+    private int[] count = new int[16]; // names in the subtree, the node's own included
+    private int nodeCount; // slots handed out, a removed branch keeps its slots
+    private int size;
+
+    RadixPassengerTrie() {
+        newNode(0, 0);
+    }
+
+    @Override
+    public void add(String name) {
+        int node = 0;
+        int i = 0;
+        while (i < name.length()) {
+            char c = name.charAt(i);
+            int previous = NONE;
+            int child = firstChild[node];
+            while (child != NONE && chars[labelStart[child]] < c) {
+                previous = child;
+                child = nextSibling[child];
+            }
+
+            if (child == NONE || chars[labelStart[child]] != c) {
+                // nothing shares this char, the rest of the name becomes one leaf
+                int leaf = newNode(append(name, i), name.length() - i);
+                link(node, previous, leaf, child);
+                node = leaf;
+                break;
+            }
+
+            int start = labelStart[child];
+            int length = labelLength[child];
+            int matched = 0;
+            while (matched < length && i < name.length() && chars[start + matched] == name.charAt(i)) {
+                matched++;
+                i++;
+            }
+            if (matched < length) {
+                // name leaves the label part way: split it, child keeps the tail of its label
+                int middle = newNode(start, matched);
+                count[middle] = count[child];
+                link(node, previous, middle, nextSibling[child]);
+                firstChild[middle] = child;
+                nextSibling[child] = NONE;
+                labelStart[child] = start + matched;
+                labelLength[child] = length - matched;
+                child = middle;
+            }
+            node = child;
+        }
+
+        if (!terminal[node]) {
+            terminal[node] = true;
+            size++;
+            // second walk down the now complete path, labels line up with the name exactly
+            count[0]++;
+            for (int at = 0, j = 0; j < name.length(); ) {
+                at = child(at, name.charAt(j));
+                count[at]++;
+                j += labelLength[at];
+            }
+        }
+    }
+
+    // bottom up build for an empty trie: with sorted names every new name only branches off the path to the
+    // previous one, so we keep that path on a stack and append at its end. One pass, no child searches, and a
+    // node's count is final when it's popped. A non empty trie just adds them one by one.
+    // throws IllegalArgumentException at the first name out of order, the names before it stay loaded
+    @Override
+    public int addSorted(Iterator<String> sortedNames) {
+        if (terminal[0] || firstChild[0] != NONE) {
+            return super.addSorted(sortedNames);
+        }
+        int before = size;
+        int[] stack = new int[16];
+        int[] depth = new int[16]; // name length down to the end of the node's label
+        int[] lastChild = new int[16];
+        int top = 0;
+        lastChild[0] = NONE;
+        String previous = null;
+        try {
+            while (sortedNames.hasNext()) {
+                String name = sortedNames.next();
+                int shared = 0;
+                if (previous != null) {
+                    int order = name.compareTo(previous);
+                    if (order == 0) {
+                        continue;
+                    }
+                    if (order < 0) {
+                        throw new IllegalArgumentException("names are not sorted, \"" + name + "\" came after \"" + previous + "\"");
+                    }
+                    while (shared < name.length() && shared < previous.length()
+                            && name.charAt(shared) == previous.charAt(shared)) {
+                        shared++;
+                    }
+                }
+                previous = name;
+
+                // leave everything deeper than the shared part
+                while (top > 0 && depth[top - 1] >= shared) {
+                    count[stack[top - 1]] += count[stack[top]];
+                    top--;
+                }
+                int node = stack[top];
+                if (depth[top] > shared) {
+                    // split: node keeps the shared start of its label, a new node takes the rest and its subtree
+                    int cut = labelLength[node] - (depth[top] - shared);
+                    int tail = newNode(labelStart[node] + cut, labelLength[node] - cut);
+                    firstChild[tail] = firstChild[node];
+                    terminal[tail] = terminal[node];
+                    count[tail] = count[node];
+                    labelLength[node] = cut;
+                    firstChild[node] = tail;
+                    terminal[node] = false;
+                    depth[top] = shared;
+                    lastChild[top] = tail;
+                }
+
+                if (name.length() == shared) { // only the empty name, first in line
+                    terminal[node] = true;
+                    count[node]++;
+                    size++;
+                    continue;
+                }
+                int leaf = newNode(append(name, shared), name.length() - shared);
+                terminal[leaf] = true;
+                count[leaf] = 1;
+                size++;
+                if (lastChild[top] == NONE) {
+                    firstChild[node] = leaf;
+                } else {
+                    nextSibling[lastChild[top]] = leaf;
+                }
+                lastChild[top] = leaf;
+
+                if (++top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                    depth = Arrays.copyOf(depth, top * 2);
+                    lastChild = Arrays.copyOf(lastChild, top * 2);
+                }
+                stack[top] = leaf;
+                depth[top] = name.length();
+                lastChild[top] = NONE;
+            }
+        } finally {
+            // pop the rest so every count is right even if we stopped at an unsorted name
+            while (top > 0) {
+                count[stack[top - 1]] += count[stack[top]];
+                top--;
+            }
+        }
+        return size - before;
+    }
+
+    @Override
+    public boolean remove(String name) {
+        int node = 0;
+        int i = 0;
+        while (i < name.length()) {
+            node = child(node, name.charAt(i));
+            if (node == NONE || !labelMatches(node, name, i)) {
+                return false;
+            }
+            i += labelLength[node];
+        }
+        if (!terminal[node]) {
+            return false;
+        }
+        terminal[node] = false;
+        size--;
+
+        count[0]--;
+        int parent = 0;
+        for (int j = 0; j < name.length(); ) {
+            int child = child(parent, name.charAt(j));
+            count[child]--;
+            if (count[child] == 0) {
+                unlink(parent, child); // nothing left below, cut the whole branch
+                break;
+            }
+            j += labelLength[child];
+            parent = child;
+        }
+        return true;
+    }
+
+    private void unlink(int parent, int node) {
+        if (firstChild[parent] == node) {
+            firstChild[parent] = nextSibling[node];
+            return;
+        }
+        int previous = firstChild[parent];
+        while (nextSibling[previous] != node) {
+            previous = nextSibling[previous];
+        }
+        nextSibling[previous] = nextSibling[node];
+    }
+
+    // puts node in parent's child list between previous (NONE = front) and next
+    private void link(int parent, int previous, int node, int next) {
+        nextSibling[node] = next;
+        if (previous == NONE) {
+            firstChild[parent] = node;
+        } else {
+            nextSibling[previous] = node;
+        }
+    }
+
+    private int newNode(int start, int length) {
+        if (nodeCount == labelStart.length) {
+            int capacity = nodeCount * 2;
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            terminal = Arrays.copyOf(terminal, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+        int node = nodeCount++;
+        labelStart[node] = start;
+        labelLength[node] = length;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        terminal[node] = false;
+        count[node] = 0;
+        return node;
+    }
+
+    @Override
+    int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    @Override
+    int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    @Override
+    int labelStart(int node) {
+        return labelStart[node];
+    }
+
+    @Override
+    int labelLength(int node) {
+        return labelLength[node];
+    }
+
+    @Override
+    boolean terminal(int node) {
+        return terminal[node];
+    }
+
+    @Override
+    int count(int node) {
+        return count[node];
+    }
+
+    @Override
+    char poolChar(int index) {
+        return chars[index];
+    }
+
+    @Override
+    void appendLabel(StringBuilder name, int start, int length) {
+        name.append(chars, start, length);
+    }
+
+    // copies name[from..] into the pool, returns where it starts
+    private int append(String name, int from) {
+        int length = name.length() - from;
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        name.getChars(from, name.length(), chars, charCount);
+        int start = charCount;
+        charCount += length;
+        return start;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // allocated arrays (not just the used part): 5 int arrays and a boolean array per node slot, the char pool
+        return 16 + 16L * 7 + (long) labelStart.length * (5 * 4 + 1) + (long) chars.length * 2;
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.List;
+
+// the read side of a radix passenger trie (lookups, ordered walks, counts), shared by the in memory
+// RadixPassengerTrie and the memory mapped MappedPassengerTrie. Subclasses only say where a node's fields and
+// the label chars live. Node 0 is the root, children are linked in first char order, labels are slices of a pool
+abstract class RadixTrieReader implements PassengerIndex {
+    static final int NONE = -1;
+
+    abstract int firstChild(int node);
+
+    abstract int nextSibling(int node);
+
+    abstract int labelStart(int node);
+
+    abstract int labelLength(int node);
+
+    abstract boolean terminal(int node);
+
+    abstract int count(int node); // names in the subtree, the node's own included
+
+    abstract char poolChar(int index);
+
+    void appendLabel(StringBuilder name, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            name.append(poolChar(start + i));
+        }
+    }
+
+    @Override
+    public int count(String prefix) {
+        int node = descend(prefix, new StringBuilder());
+        return node == NONE ? 0 : count(node);
+    }
+
+    // skips whole subtrees by their counts, O(prefix + depth * children per node)
+    @Override
+    public String nameAt(String prefix, int rank) {
+        StringBuilder name = new StringBuilder(prefix);
+        int node = descend(prefix, name);
+        if (node == NONE || rank < 0 || rank >= count(node)) {
+            return null;
+        }
+        while (true) {
+            if (terminal(node)) {
+                if (rank == 0) {
+                    return name.toString();
+                }
+                rank--;
+            }
+            int child = firstChild(node);
+            while (rank >= count(child)) {
+                rank -= count(child);
+                child = nextSibling(child);
+            }
+            appendLabel(name, labelStart(child), labelLength(child));
+            node = child;
+        }
+    }
+
+    @Override
+    public void collect(String prefix, List<String> results) {
+        StringBuilder name = new StringBuilder(prefix);
+        int node = descend(prefix, name);
+        if (node != NONE) {
+            traverse(node, name, results);
+        }
+    }
+
+    // walks children in order and stops once limit names are in, so a page costs O(prefix + depth + limit)
+    // subtrees that sort entirely before `after` are skipped without being entered
+    @Override
+    public void collect(String prefix, String after, int limit, List<String> results) {
+        StringBuilder name = new StringBuilder(prefix);
+        int node = descend(prefix, name);
+        if (node == NONE) {
+            return;
+        }
+        int position = after == null ? 1 : comparePrefix(name, after);
+        if (position >= 0) {
+            page(node, name, position > 0 ? null : after, limit, results);
+        }
+    }
+
+    // bounded DFS: one Levenshtein row per char walked (EditDistance), a branch is dropped once its row is over
+    // maxEdits everywhere, so only names near the query are ever walked. Names come out in order
+    @Override
+    public void collectSimilar(String query, int maxEdits, boolean asPrefix, List<String> results) {
+        if (maxEdits < 0) {
+            return;
+        }
+        // row[j] >= |depth - j| so nothing deeper than query + maxEdits survives
+        int[][] rows = new int[query.length() + maxEdits + 2][];
+        rows[0] = EditDistance.firstRow(query);
+        if (asPrefix && rows[0][query.length()] <= maxEdits) {
+            traverse(0, new StringBuilder(), results); // the query is short enough to match anything
+            return;
+        }
+        similar(0, new StringBuilder(), rows, query, maxEdits, asPrefix, results);
+    }
+
+    // rows[name.length()] is the row for the path down to node
+    private void similar(int node, StringBuilder name, int[][] rows, String query, int maxEdits, boolean asPrefix,
+                         List<String> results) {
+        if (!asPrefix && terminal(node) && rows[name.length()][query.length()] <= maxEdits) {
+            results.add(name.toString());
+        }
+        int length = name.length();
+        for (int child = firstChild(node); child != NONE; child = nextSibling(child)) {
+            int start = labelStart(child);
+            int labelLength = labelLength(child);
+            boolean descend = true;
+            for (int i = 0; i < labelLength && descend; i++) {
+                char c = poolChar(start + i);
+                int depth = name.length();
+                if (rows[depth + 1] == null) {
+                    rows[depth + 1] = new int[query.length() + 1];
+                }
+                int smallest = EditDistance.nextRow(rows[depth], rows[depth + 1], query, c);
+                name.append(c);
+                if (asPrefix && rows[depth + 1][query.length()] <= maxEdits) {
+                    // close enough already, every name below matches
+                    appendLabel(name, start + i + 1, labelLength - i - 1);
+                    traverse(child, name, results);
+                    descend = false;
+                } else if (smallest > maxEdits) {
+                    descend = false;
+                }
+            }
+            if (descend) {
+                similar(child, name, rows, query, maxEdits, asPrefix, results);
+            }
+            name.setLength(length);
+        }
+    }
+
+    // node where prefix ends (NONE if no name starts with it), name gets the rest of that node's label
+    int descend(String prefix, StringBuilder name) {
+        int node = 0;
+        int i = 0;
+        while (i < prefix.length()) {
+            int child = child(node, prefix.charAt(i));
+            if (child == NONE) {
+                return NONE;
+            }
+            int start = labelStart(child);
+            int length = labelLength(child);
+            int matched = 0;
+            while (matched < length && i < prefix.length()) {
+                if (poolChar(start + matched) != prefix.charAt(i)) {
+                    return NONE;
+                }
+                matched++;
+                i++;
+            }
+            // prefix may stop inside the label, the rest of it is part of every match
+            appendLabel(name, start + matched, length - matched);
+            node = child;
+        }
+        return node;
+    }
+
+    // traverse with a limit, after == null once everything left is past the cursor
+    private void page(int node, StringBuilder name, String after, int limit, List<String> results) {
+        if (terminal(node) && after == null && results.size() < limit) {
+            results.add(name.toString());
+        }
+        int length = name.length();
+        for (int child = firstChild(node); child != NONE && results.size() < limit; child = nextSibling(child)) {
+            appendLabel(name, labelStart(child), labelLength(child));
+            int position = after == null ? 1 : comparePrefix(name, after);
+            if (position >= 0) {
+                page(child, name, position > 0 ? null : after, limit, results);
+            }
+            name.setLength(length);
+        }
+    }
+
+    // name against after cut to name's length: < 0 everything below name sorts before after,
+    // > 0 everything below sorts after it, 0 name is a prefix of after (or equal). ConcurrentPassengerTrie pages
+    // with it too
+    static int comparePrefix(StringBuilder name, String after) {
+        int shared = Math.min(name.length(), after.length());
+        for (int i = 0; i < shared; i++) {
+            int difference = name.charAt(i) - after.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return name.length() > after.length() ? 1 : 0;
+    }
+
+    // names below node in order, name holds the path down to node
+    private void traverse(int node, StringBuilder name, List<String> results) {
+        if (terminal(node)) {
+            results.add(name.toString());
+        }
+        int length = name.length();
+        for (int child = firstChild(node); child != NONE; child = nextSibling(child)) {
+            appendLabel(name, labelStart(child), labelLength(child));
+            traverse(child, name, results);
+            name.setLength(length);
+        }
+    }
+
+    int child(int node, char c) {
+        for (int child = firstChild(node); child != NONE; child = nextSibling(child)) {
+            char first = poolChar(labelStart(child));
+            if (first == c) {
+                return child;
+            }
+            if (first > c) {
+                return NONE; // sorted, it isn't further along
+            }
+        }
+        return NONE;
+    }
+
+    // whether node's whole label is at name[from..]
+    boolean labelMatches(int node, String name, int from) {
+        int length = labelLength(node);
+        if (length > name.length() - from) {
+            return false;
+        }
+        int start = labelStart(node);
+        for (int j = 0; j < length; j++) {
+            if (poolChar(start + j) != name.charAt(from + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
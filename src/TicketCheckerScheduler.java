@@ -0,0 +1,115 @@
+// hireTicketCheckers for a feed of shifts that never fits in memory at once
+// same greedy (earliest end first, a shift is taken if it starts at or after the last taken one ends), but the
+// shifts come in one at a time. They only have to be roughly in end order: up to `buffer` of them wait in a
+// primitive min-heap keyed by (end, start), and once it's full the earliest one is released to the greedy.
+// a shift that shows up after a later ending one was already released can't be placed any more and throws
+// IllegalStateException, so buffer has to cover how far out of order the feed gets (0 = sorted by end, ties in
+// any order). The count is the one for (end, start) order whatever order equal ends come in: shifts ending at
+// the same time are counted as a group, at most one of the ones with length (any that starts at or after the
+// group before ended) plus every zero length one, they always fit at the end
+//https://en.wikipedia.org/wiki/Interval_scheduling#Greedy_polynomial_solution
+class TicketCheckerScheduler {
+    private final int buffer;
+    private final LongHeap heap; // packed (end, start), see pack
+    private long lastReleased = Long.MIN_VALUE;
+    private int end = Integer.MIN_VALUE; // end of the last shift taken
+    private int before = Integer.MIN_VALUE; // end of the last shift taken before the group ending at end(lastReleased)
+    private boolean groupTookOne; // a shift with length from that group was taken
+    private int hired;
+    private long seen;
+
+    TicketCheckerScheduler(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("buffer can't be negative, got " + buffer);
+        }
+        this.buffer = buffer;
+        this.heap = new LongHeap(buffer);
+    }
+
+    void add(int start, int end) {
+        long key = pack(start, end);
+        if (end < end(lastReleased)) {
+            throw new IllegalStateException("shift [" + start + ", " + end + "] arrived after shifts ending at "
+                    + end(lastReleased) + " were scheduled, a buffer of " + buffer + " isn't enough");
+        }
+        seen++;
+        if (heap.size() < buffer) {
+            heap.push(key);
+        } else if (buffer == 0 || key <= heap.peek()) {
+            release(key); // earlier than everything waiting, no need to go through the heap
+        } else {
+            release(heap.replaceTop(key));
+        }
+    }
+
+    // checkers hired for the shifts released so far, the ones still in the buffer aren't counted
+    int hiredSoFar() {
+        return hired;
+    }
+
+    // checkers needed for everything seen so far, the buffer included, without releasing anything
+    // only the buffer gets sorted (a copy of it), never the whole feed
+    int hired() {
+        // release the sorted copy, then put the state back
+        long savedReleased = lastReleased;
+        int savedEnd = end;
+        int savedBefore = before;
+        boolean savedGroupTookOne = groupTookOne;
+        int savedHired = hired;
+        for (long key : heap.sortedCopy()) {
+            release(key);
+        }
+        int count = hired;
+        lastReleased = savedReleased;
+        end = savedEnd;
+        before = savedBefore;
+        groupTookOne = savedGroupTookOne;
+        hired = savedHired;
+        return count;
+    }
+
+    long shiftsSeen() {
+        return seen;
+    }
+
+    // releases everything still buffered, returns the final count. More shifts can still come after it
+    // as long as they don't end before the last released one
+    int finish() {
+        while (heap.size() > 0) {
+            release(heap.pop());
+        }
+        return hired;
+    }
+
+    private void release(long key) {
+        int shiftStart = start(key);
+        int shiftEnd = end(key);
+        if (shiftEnd != end(lastReleased)) { // first of a new group (the starting state is an empty group)
+            before = end;
+            groupTookOne = false;
+        }
+        lastReleased = key;
+        if (shiftStart == shiftEnd) {
+            end = shiftEnd; // everything taken so far ends at or before it
+            hired++;
+        } else if (!groupTookOne && before <= shiftStart) {
+            groupTookOne = true;
+            end = shiftEnd;
+            hired++;
+        }
+    }
+
+    // one shift in a long: end in the high half (signed), start flipped to unsigned in the low half,
+    // so plain long order is (end, start). McMetro.hireTicketCheckers(int[], int[]) sorts these too
+    static long pack(int start, int end) {
+        return ((long) end << 32) | ((start & 0xffffffffL) ^ 0x80000000L);
+    }
+
+    static int start(long shift) {
+        return (int) shift ^ 0x80000000;
+    }
+
+    static int end(long shift) {
+        return (int) (shift >> 32);
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// per network cache for bestMetroSystem: every track's score (usable capacity / cost) computed once and the
+// tracks sorted best first. McMetro drops it whenever tracks or occupants change, so repeated bestMetroSystem
+// calls only walk the cached order through the union-find (about O(m alpha(n))) instead of sorting again.
+// scores are compared exactly as fractions (cross multiplying in long) rather than with the truncating int
+// division howGoodTrack does, so 199/100 really beats 150/100. Equal scores go to the lower track id, then the
+// earlier track in the array
+class TrackScoreIndex {
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13; // merge sort halves below this aren't forked
+
+    final int[] weight; // capacity the track can really carry, min(track capacity, occupants at both ends)
+    final int[] cost;
+    final int[] trackId;
+    final int[] order;  // track indices, best score first
+
+    private TrackScoreIndex(int[] weight, int[] cost, int[] trackId) {
+        this.weight = weight;
+        this.cost = cost;
+        this.trackId = trackId;
+        this.order = new int[weight.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+    }
+
+    // pool can be null to sort on the calling thread
+    static TrackScoreIndex build(FlowNetwork network, Track[] tracks, ForkJoinPool pool) {
+        int m = tracks == null ? 0 : tracks.length;
+        int[] cost = new int[m];
+        int[] trackId = new int[m];
+        for (int i = 0; i < m; i++) {
+            cost[i] = tracks[i].cost();
+            trackId[i] = tracks[i].id().trackId();
+        }
+        return build(network, cost, trackId, pool);
+    }
+
+    // same from plain columns (McMetro built from a NetworkColumns), the arrays are kept, not copied
+    static TrackScoreIndex build(FlowNetwork network, int[] cost, int[] trackId, ForkJoinPool pool) {
+        int m = cost.length;
+        int[] weight = new int[m];
+        for (int i = 0; i < m; i++) {
+            int edge = network.trackEdge[i];
+            weight[i] = edge < 0 ? 0 : network.capacity[edge];
+            if (cost[i] == 0) {
+                throw new ArithmeticException("track " + new TrackID(trackId[i]) + " has cost 0, its score is undefined");
+            }
+        }
+
+        TrackScoreIndex index = new TrackScoreIndex(weight, cost, trackId);
+        int[] buffer = new int[m];
+        MergeSort sort = new MergeSort(index, index.order, buffer, 0, m);
+        if (pool == null) {
+            sort.compute();
+        } else {
+            pool.invoke(sort);
+        }
+        return index;
+    }
+
+    // negative if track a comes before track b
+    int compare(int a, int b) {
+        // a/b > c/d  <=>  a*d > c*b once both denominators are positive, products of ints fit in a long
+        long aWeight = weight[a];
+        long aCost = cost[a];
+        long bWeight = weight[b];
+        long bCost = cost[b];
+        if (aCost < 0) {
+            aWeight = -aWeight;
+            aCost = -aCost;
+        }
+        if (bCost < 0) {
+            bWeight = -bWeight;
+            bCost = -bCost;
+        }
+        int byScore = Long.compare(bWeight * aCost, aWeight * bCost); // descending
+        if (byScore != 0) {
+            return byScore;
+        }
+        int byId = Integer.compare(trackId[a], trackId[b]);
+        return byId != 0 ? byId : Integer.compare(a, b);
+    }
+
+    // stable top down merge sort of track indices, halves are sorted in parallel when run in a pool
+    private static class MergeSort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TrackScoreIndex index;
+        private final int[] items;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+
+        MergeSort(TrackScoreIndex index, int[] items, int[] buffer, int from, int to) {
+            this.index = index;
+            this.items = items;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2) {
+                return;
+            }
+            if (to - from <= 32) {
+                insertionSort();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            MergeSort left = new MergeSort(index, items, buffer, from, middle);
+            MergeSort right = new MergeSort(index, items, buffer, middle, to);
+            if (to - from > SEQUENTIAL_THRESHOLD && getPool() != null) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            if (index.compare(items[middle - 1], items[middle]) <= 0) {
+                return; // already in order
+            }
+            System.arraycopy(items, from, buffer, from, to - from);
+            int i = from;
+            int j = middle;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < middle && index.compare(buffer[i], buffer[j]) <= 0)) {
+                    items[k] = buffer[i++];
+                } else {
+                    items[k] = buffer[j++];
+                }
+            }
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                int item = items[i];
+                int j = i - 1;
+                while (j >= from && index.compare(items[j], item) > 0) {
+                    items[j + 1] = items[j];
+                    j--;
+                }
+                items[j + 1] = item;
+            }
+        }
+    }
+}
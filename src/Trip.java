@@ -0,0 +1,3 @@
+// one maxPassengers question, used for the batch queries in MaxPassengersService
+public record Trip(BuildingID start, BuildingID end) {
+}